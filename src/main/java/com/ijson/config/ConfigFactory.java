@@ -1,6 +1,8 @@
 package com.ijson.config;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.ijson.config.api.IChangeListener;
 import com.ijson.config.api.IChangeableConfig;
@@ -11,11 +13,18 @@ import com.ijson.config.base.ChangeableConfig;
 import com.ijson.config.base.ConfigConstants;
 import com.ijson.config.base.ProcessInfo;
 import com.ijson.config.helper.ConfigHelper;
+import com.ijson.config.helper.ConfigTreeCache;
 import com.ijson.config.helper.ConfigZkResolver;
+import com.ijson.config.impl.ReconnectCoordinator;
 import com.ijson.config.impl.RemoteConfig;
 import com.ijson.config.impl.RemoteConfigWithCache;
 import com.ijson.config.helper.ZookeeperHelper;
+import com.ijson.config.helper.ZookeeperRegistry;
 import com.ijson.config.helper.FileUpdateWatcher;
+import com.ijson.config.helper.PersistentConfigWatch;
+import com.ijson.config.helper.PreloadManifest;
+import com.ijson.config.helper.SnapshotBundle;
+import com.ijson.config.helper.StartupReport;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.utils.ZKPaths;
 import org.slf4j.Logger;
@@ -24,6 +33,17 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.ijson.config.base.ConfigConstants.ConfKeys.CONFIG_BUNDLE;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.CONFIG_PRELOAD;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_PERSISTENT_WATCH;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_TREE_CACHE;
 
 /**
  * Created by cuiyongxu on 17/8/26.
@@ -33,6 +53,8 @@ public class ConfigFactory {
 
     private static final Logger log = LoggerFactory.getLogger(ConfigFactory.class);
 
+    private static final ConcurrentMap<String, IConfigFactory> FACTORIES = Maps.newConcurrentMap();
+
 
     private ConfigFactory() {
     }
@@ -45,6 +67,10 @@ public class ConfigFactory {
         return getInstance().getConfig(name);
     }
 
+    public static CompletableFuture<IChangeableConfig> getConfigAsync(String name) {
+        return getInstance().getConfigAsync(name);
+    }
+
     public static IChangeableConfig getConfig(String name, IChangeListener listener) {
         return getInstance().getConfig(name, listener);
     }
@@ -53,32 +79,72 @@ public class ConfigFactory {
         return getInstance().getConfig(name, listener, loadAfterRegister);
     }
 
+    /**
+     * 启动时批量预加载配置,远程配置的读取请求会同时发出,之后的getConfig直接命中
+     *
+     * @param names 配置名称
+     */
+    public static void preload(Collection<String> names) {
+        getInstance().preload(names);
+    }
+
+    /**
+     * 绑定到指定zookeeper客户端的配置工厂,比如读取全局集群的配置;同一个客户端和根路径返回同一个工厂
+     *
+     * @param client   客户端名字,需要先通过 {@link ZookeeperRegistry#register(String, String)} 登记
+     * @param basePath 配置根路径
+     * @return 配置工厂,第1次创建配置时才连接zookeeper
+     */
+    public static IConfigFactory getFactory(String client, String basePath) {
+        if (!ZookeeperRegistry.contains(client)) {
+            throw new IllegalArgumentException("zookeeper client '" + client + "' not registered");
+        }
+        return FACTORIES.computeIfAbsent(ZKPaths.makePath(basePath, "") + '@' + client,
+                k -> new RemoteConfigFactory(ConfigHelper.getProcessInfo(), basePath, client, null));
+    }
+
 
     private static class LazyHolder {
         private static final IConfigFactory INSTANCE = newFactory();
 
         private static IConfigFactory newFactory() {
-            return doCreate();
+            IConfigFactory factory = StartupReport.time("createFactory", LazyHolder::doCreate);
+            StartupReport.getInstance().finish();
+            return factory;
         }
 
         private static IConfigFactory doCreate() {
             Path configPath = ConfigHelper.getConfigPath();
             IZkResolver resolver = getZkResolver();
             try {
-                resolver.resolve();
+                try (StartupReport.Timer ignored = StartupReport.start("resolveZookeeper")) {
+                    resolver.resolve();
+                }
                 ProcessInfo processInfo = ConfigHelper.getProcessInfo();
                 if (resolver.isEnable() && !Strings.isNullOrEmpty(resolver.getServer())) {
                     processInfo.setPath(resolver.getBasePath());
-                    ZookeeperHelper.setCurator(
-                            ConfigHelper.newClient(resolver.getServer(), resolver.getAuthType(), resolver.getAuth()));
+                    ZookeeperRegistry.register(ZookeeperRegistry.DEFAULT, resolver.getServer(), resolver.getAuthType(),
+                            resolver.getAuth());
+                    // 默认客户端立即开始连接
+                    CuratorFramework client = ZookeeperRegistry.get(ZookeeperRegistry.DEFAULT);
+
+                    // 所有配置共用一份zk.basePath下的配置树缓存
+                    ConfigTreeCache treeCache = null;
+                    if (ConfigHelper.getApplicationConfig().getBool(ZOOKEEPER_TREE_CACHE, false)) {
+                        treeCache = new ConfigTreeCache(client, resolver.getBasePath()).start();
+                    }
 
                     // 找不到配置的本地路径,则只用远程zookeeper配置
                     if (System.getProperty(ConfigConstants.TMP_DIR).equals(configPath.toString())) {
-                        return new RemoteConfigFactory(processInfo);
+                        return new RemoteConfigFactory(processInfo, treeCache);
                     }
 
                     // 使用远程zookeeper配置并启用本地cache功能
-                    return new RemoteConfigWithCacheFactory(configPath, processInfo);
+                    RemoteConfigWithCacheFactory factory = new RemoteConfigWithCacheFactory(configPath, processInfo, treeCache);
+                    if (ConfigHelper.getApplicationConfig().getBool(CONFIG_PRELOAD, true)) {
+                        factory.startPreload(new PreloadManifest(configPath));
+                    }
+                    return factory;
                 }
             } catch (Exception e) {
                 log.error("cannot resolve zookeeper settings", e);
@@ -100,12 +166,28 @@ public class ConfigFactory {
         }
     }
 
+    /**
+     * 本地cache目录的打包文件,可以通过 config.bundle=false 关闭;找不到配置目录退回到临时目录时不打包
+     *
+     * @param path 本地cache目录
+     * @return 关闭或者是临时目录时返回null
+     */
+    private static SnapshotBundle newBundle(Path path) {
+        if (!ConfigHelper.getApplicationConfig().getBool(CONFIG_BUNDLE, true)
+                || System.getProperty(ConfigConstants.TMP_DIR).equals(path.toString())) {
+            return null;
+        }
+        return new SnapshotBundle(path);
+    }
+
     private static class RemoteConfigWithCacheFactory extends RemoteConfigFactory {
         private final Path path;
+        private final SnapshotBundle bundle;
 
-        RemoteConfigWithCacheFactory(Path localConfigPath, ProcessInfo info) {
-            super(info);
+        RemoteConfigWithCacheFactory(Path localConfigPath, ProcessInfo info, ConfigTreeCache treeCache) {
+            super(info, treeCache);
             this.path = localConfigPath;
+            this.bundle = newBundle(localConfigPath);
         }
 
         /**
@@ -124,30 +206,72 @@ public class ConfigFactory {
          * @return 配置
          */
         @Override
-        protected IChangeableConfig doCreate(String name) {
-            ProcessInfo info = getInfo();
-            String path = ZKPaths.makePath(info.getPath(), name);
+        protected boolean hasLocalCopy(String name) {
+            return RemoteConfigWithCache.hasCache(this.path.resolve(name).toFile());
+        }
+
+        @Override
+        protected RemoteConfig newConfig(String name, String path) {
             File cacheFile = this.path.resolve(name).toFile();
-            RemoteConfigWithCache c = new RemoteConfigWithCache(name, path, info.orderedPath(), cacheFile);
-            c.loadAndWatchChanges();
+            RemoteConfigWithCache c = new RemoteConfigWithCache(name, path, getInfo().orderedPath(), cacheFile);
+            if (bundle != null) {
+                c.setBundle(bundle);
+                bundle.track(c, cacheFile);
+            }
             return c;
         }
     }
 
     private static class RemoteConfigFactory extends AbstractConfigFactory {
+        private static final long PRELOAD_TIMEOUT = 60;
         private final ProcessInfo info;
+        private final String basePath;
+        private final String client;
+        private final ConfigTreeCache treeCache;
+        private final boolean persistentWatch =
+                ConfigHelper.getApplicationConfig().getBool(ZOOKEEPER_PERSISTENT_WATCH, false);
+        private volatile PreloadManifest manifest;
+
+        RemoteConfigFactory(ProcessInfo info, ConfigTreeCache treeCache) {
+            this(info, info.getPath(), ZookeeperRegistry.DEFAULT, treeCache);
+        }
 
-        RemoteConfigFactory(ProcessInfo info) {
+        /**
+         * @param info     进程信息,决定profile查找顺序
+         * @param basePath 配置根路径
+         * @param client   zookeeper客户端名字
+         * @param treeCache 配置树缓存,可以为null
+         */
+        RemoteConfigFactory(ProcessInfo info, String basePath, String client, ConfigTreeCache treeCache) {
             this.info = info;
+            this.basePath = basePath;
+            this.client = client;
+            this.treeCache = treeCache;
+            // 端口在后台识别出来后,已经创建的配置需要按ip:port重新查找
+            info.onPortResolved(() -> getAllConfig().stream()
+                    .filter(RemoteConfig.class::isInstance)
+                    .forEach(c -> ((RemoteConfig) c).updatePaths(info.orderedPath())));
+        }
+
+        /**
+         * 创建期间端口可能已经识别出来,登记后再按最新的顺序检查1次
+         */
+        @Override
+        protected IChangeableConfig register(String name, IChangeableConfig config) {
+            IChangeableConfig real = super.register(name, config);
+            if (real instanceof RemoteConfig) {
+                ((RemoteConfig) real).updatePaths(info.orderedPath());
+            }
+            return real;
         }
 
         /**
          * @return
-         * @see ZookeeperHelper#getCurator()
+         * @see #getCurator()
          */
         @Deprecated
         public CuratorFramework getClient() {
-            return ZookeeperHelper.getCurator();
+            return getCurator();
         }
 
         @Deprecated
@@ -159,6 +283,48 @@ public class ConfigFactory {
             return info;
         }
 
+        /**
+         * 工厂绑定的zookeeper客户端,第1次获取时连接
+         *
+         * @return 客户端
+         */
+        CuratorFramework getCurator() {
+            return ZookeeperRegistry.get(client);
+        }
+
+        /**
+         * 记录本次请求的配置,并在后台预加载上次运行时请求过的配置
+         *
+         * @param manifest 预加载清单
+         */
+        void startPreload(PreloadManifest manifest) {
+            this.manifest = manifest;
+            List<String> names = manifest.load();
+            if (names.isEmpty()) {
+                return;
+            }
+            Runnable done = StartupReport.getInstance().await("preload");
+            Thread t = new Thread(() -> {
+                try {
+                    preload(names);
+                } catch (Exception e) {
+                    log.error("cannot preload {}  {}", names, e);
+                } finally {
+                    done.run();
+                }
+            }, "config-preload");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        @Override
+        protected void onRequest(String name) {
+            PreloadManifest m = manifest;
+            if (m != null) {
+                m.record(name);
+            }
+        }
+
 
         /**
          * 创建LocalConfig并增加更新回调功能
@@ -168,18 +334,97 @@ public class ConfigFactory {
          */
         @Override
         protected IChangeableConfig doCreate(String name) {
-            String path = ZKPaths.makePath(info.getPath(), name);
-            RemoteConfig c = new RemoteConfig(name, path, info.orderedPath());
+            RemoteConfig c = createConfig(name);
             c.loadAndWatchChanges();
             return c;
         }
+
+        /**
+         * 创建尚未加载的配置
+         *
+         * @param name 配置名
+         * @return 配置
+         */
+        protected RemoteConfig createConfig(String name) {
+            CuratorFramework curator = getCurator();
+            RemoteConfig c = newConfig(name, ZKPaths.makePath(basePath, name));
+            c.setTreeCache(treeCache);
+            c.setClient(curator);
+            if (treeCache == null && persistentWatch) {
+                // 同一个客户端和根路径只注册1个持久递归watch
+                c.setPersistentWatch(PersistentConfigWatch.of(curator, basePath));
+            }
+            // 使用同一个客户端的工厂共用重连处理
+            c.setReconnectCoordinator(ReconnectCoordinator.of(curator));
+            return c;
+        }
+
+        /**
+         * @param name 配置名
+         * @param path 配置在zookeeper上的路径
+         * @return 尚未设置客户端的配置
+         */
+        protected RemoteConfig newConfig(String name, String path) {
+            return new RemoteConfig(name, path, info.orderedPath());
+        }
+
+        @Override
+        protected boolean awaitPreloadReady() {
+            try {
+                if (RemoteConfig.awaitConnected(getCurator())) {
+                    return true;
+                }
+                // 应用请求时逐个创建,每个配置先返回空的内容,连上后在后台加载
+                log.warn("preload skipped, zookeeper not connected");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        /**
+         * 所有配置的读取请求先全部发出再统一等待,启动耗时接近单个配置的往返时间;
+         * 超时没有加载完的配置同样登记,在后台继续加载,不会再创建第2个实例
+         *
+         * @param names 配置名称
+         */
+        @Override
+        protected void doPreload(Collection<String> names) {
+            long start = System.currentTimeMillis();
+            StartupReport.Timer timer = StartupReport.start("preload");
+            Map<String, RemoteConfig> created = Maps.newLinkedHashMap();
+            List<CompletableFuture<Void>> futures = Lists.newArrayList();
+            for (String name : names) {
+                RemoteConfig c = createConfig(name);
+                created.put(name, c);
+                long begin = System.nanoTime();
+                futures.add(c.loadAndWatchChangesAsync().whenComplete((v, e) -> {
+                    StartupReport.getInstance().record("load:" + name, System.nanoTime() - begin);
+                    // 每个配置加载好就登记,等待它的请求不用等整批结束
+                    register(name, c);
+                }));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(PRELOAD_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("preload {} not finished in {}s  {}", names, PRELOAD_TIMEOUT, e);
+            }
+            // 没有加载完的也登记,继续在后台加载
+            created.forEach(this::register);
+            timer.close();
+            log.info("preload {} configs cost {}ms", created.size(), System.currentTimeMillis() - start);
+        }
     }
 
     private static class LocalConfigFactory extends AbstractConfigFactory {
         private final Path path;
+        private final SnapshotBundle bundle;
 
         LocalConfigFactory(Path localConfigPath) {
             this.path = localConfigPath;
+            this.bundle = newBundle(localConfigPath);
         }
 
         /**
@@ -200,7 +445,10 @@ public class ConfigFactory {
         @Override
         protected IChangeableConfig doCreate(String name) {
             Path p = path.resolve(name);
-            final LocalConfig c = new LocalConfig(name, p);
+            final LocalConfig c = new LocalConfig(name, p, bundle);
+            if (bundle != null) {
+                bundle.track(c, p.toFile());
+            }
             FileUpdateWatcher.getInstance().watch(p, (path1, content) -> {
                 if (c.isChanged(content)) {
                     log.info("{} changed", path1);
@@ -217,12 +465,16 @@ public class ConfigFactory {
 
         private final Path path;
 
-        LocalConfig(String name, Path path) {
+        LocalConfig(String name, Path path, SnapshotBundle bundle) {
             super(name);
             this.path = path;
             try {
-                if (path.toFile().exists()) {
-                    copyOf(Files.toByteArray(path.toFile()));
+                File f = path.toFile();
+                byte[] content = bundle == null ? null : bundle.read(name, f);
+                if (content != null) {
+                    copyOf(content);
+                } else if (f.exists()) {
+                    copyOf(Files.toByteArray(f));
                 }
             } catch (IOException e) {
                 copyOf(new byte[0]);
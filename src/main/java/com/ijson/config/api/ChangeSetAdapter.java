@@ -0,0 +1,127 @@
+package com.ijson.config.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * {@link IChangeable} 没有按变化key回调的实现时,把 {@link IChangeSetListener} 包装成普通listener,
+ * 每次回调与上次回调时的 {@link IConfig#getAll()} 对比出变化的key
+ *
+ * @author *
+ */
+final class ChangeSetAdapter implements IChangeListener {
+    private final IChangeSetListener listener;
+    private Map<String, String> last;
+    private long version;
+
+    ChangeSetAdapter(IChangeSetListener listener) {
+        this.listener = Objects.requireNonNull(listener);
+    }
+
+    /**
+     * 以当前内容作为下次回调的对比起点
+     */
+    synchronized void prime(IConfig config) {
+        last = new HashMap<>(config.getAll());
+    }
+
+    @Override
+    public synchronized void changed(IConfig config) {
+        Map<String, String> now = new HashMap<>(config.getAll());
+        Map<String, String> before = last;
+        last = now;
+        Set<String> added = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        Set<String> modified = new LinkedHashSet<>();
+        for (Map.Entry<String, String> i : now.entrySet()) {
+            if (before == null || !before.containsKey(i.getKey())) {
+                added.add(i.getKey());
+            } else if (!Objects.equals(before.get(i.getKey()), i.getValue())) {
+                modified.add(i.getKey());
+            }
+        }
+        if (before != null) {
+            for (String key : before.keySet()) {
+                if (!now.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+        Changes changes = new Changes(added, removed, modified, ++version);
+        // 首次回调所有key都算新增,即使为空也回调
+        if (before == null || !changes.isEmpty()) {
+            listener.changed(config, changes);
+        }
+    }
+
+    /**
+     * 按包装的listener判断相等,便于用新的包装去掉已注册的listener
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChangeSetAdapter && ((ChangeSetAdapter) o).listener.equals(listener);
+    }
+
+    @Override
+    public int hashCode() {
+        return listener.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return listener.toString();
+    }
+
+    private static final class Changes implements IChangeSet {
+        private final Set<String> added;
+        private final Set<String> removed;
+        private final Set<String> modified;
+        private final long version;
+
+        Changes(Set<String> added, Set<String> removed, Set<String> modified, long version) {
+            this.added = Collections.unmodifiableSet(added);
+            this.removed = Collections.unmodifiableSet(removed);
+            this.modified = Collections.unmodifiableSet(modified);
+            this.version = version;
+        }
+
+        @Override
+        public Set<String> getAdded() {
+            return added;
+        }
+
+        @Override
+        public Set<String> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        public Set<String> getModified() {
+            return modified;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return added.contains(key) || removed.contains(key) || modified.contains(key);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+        }
+
+        @Override
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return "Changes{added=" + added + ", removed=" + removed + ", modified=" + modified + '}';
+        }
+    }
+}
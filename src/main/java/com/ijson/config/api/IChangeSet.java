@@ -0,0 +1,53 @@
+package com.ijson.config.api;
+
+import java.util.Set;
+
+/**
+ * 两次配置快照之间发生变化的key集合
+ *
+ * @author *
+ */
+public interface IChangeSet {
+    /**
+     * 新增的key
+     *
+     * @return 只读集合
+     */
+    Set<String> getAdded();
+
+    /**
+     * 删除的key
+     *
+     * @return 只读集合
+     */
+    Set<String> getRemoved();
+
+    /**
+     * 值发生变化的key
+     *
+     * @return 只读集合
+     */
+    Set<String> getModified();
+
+    /**
+     * 是否有key发生变化
+     *
+     * @param key 查找的key
+     * @return 新增、删除或者修改都返回true
+     */
+    boolean contains(String key);
+
+    /**
+     * 是否没有任何key发生变化
+     *
+     * @return 没有变化返回true
+     */
+    boolean isEmpty();
+
+    /**
+     * 变化后配置快照的版本号
+     *
+     * @return 版本号
+     */
+    long getVersion();
+}
@@ -0,0 +1,14 @@
+package com.ijson.config.api;
+
+/**
+ * @author *
+ */
+public interface IChangeSetListener {
+    /**
+     * 配置更新，只回调真正发生变化的key，便于只重建受影响的功能
+     *
+     * @param config  配置文件
+     * @param changes 与上次回调相比新增、删除、修改的key
+     */
+    void changed(IConfig config, IChangeSet changes);
+}
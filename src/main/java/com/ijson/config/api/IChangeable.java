@@ -19,12 +19,71 @@ public interface IChangeable {
     void addListener(IChangeListener listener, boolean loadAfterRegister);
 
     /**
-     * 去掉listener
+     * 注册只关心指定key的更新回调方法，并且会马上调用1次回调函数
+     *
+     * @param keyOrPrefix 关心的key，以'*'结尾表示前缀，如 redis.*
+     * @param listener    更新回调方法
+     */
+    default void addListener(String keyOrPrefix, IChangeListener listener) {
+        addListener(keyOrPrefix, listener, true);
+    }
+
+    /**
+     * 注册只关心指定key的更新回调方法，只有匹配的key新增、删除或修改时才回调；
+     * 默认实现不区分key，任何更新都回调
+     *
+     * @param keyOrPrefix       关心的key，以'*'结尾表示前缀，如 redis.*
+     * @param listener          更新回调方法
+     * @param loadAfterRegister 注册后立即调用回调函数
+     */
+    default void addListener(String keyOrPrefix, IChangeListener listener, boolean loadAfterRegister) {
+        addListener(listener, loadAfterRegister);
+    }
+
+    /**
+     * 去掉listener，包括按key注册的
      *
      * @param listener 更新回调函数
      */
     void removeListener(IChangeListener listener);
 
+    /**
+     * 注册按变化key回调的方法，并且会马上调用1次回调函数，此时所有key都算新增
+     *
+     * @param listener 更新回调方法
+     */
+    default void addListener(IChangeSetListener listener) {
+        addListener(listener, true);
+    }
+
+    /**
+     * 注册按变化key回调的方法；默认实现包装成普通listener，每次回调时与上次的 getAll() 对比出变化的key
+     *
+     * @param listener          更新回调方法
+     * @param loadAfterRegister 注册后立即调用回调函数
+     */
+    default void addListener(IChangeSetListener listener, boolean loadAfterRegister) {
+        if (listener != null) {
+            ChangeSetAdapter adapter = new ChangeSetAdapter(listener);
+            if (!loadAfterRegister && this instanceof IConfig) {
+                // 不立即回调时以注册时的内容为对比起点
+                adapter.prime((IConfig) this);
+            }
+            addListener(adapter, loadAfterRegister);
+        }
+    }
+
+    /**
+     * 去掉按变化key回调的listener
+     *
+     * @param listener 更新回调函数
+     */
+    default void removeListener(IChangeSetListener listener) {
+        if (listener != null) {
+            removeListener(new ChangeSetAdapter(listener));
+        }
+    }
+
     /**
      * 通知所有注册的回调函数
      */
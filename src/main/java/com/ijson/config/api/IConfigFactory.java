@@ -1,6 +1,8 @@
 package com.ijson.config.api;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by cuiyongxu on 17/8/26.
@@ -22,6 +24,14 @@ public interface IConfigFactory {
      */
     IChangeableConfig getConfig(String name);
 
+    /**
+     * 异步获取一个IConfig对象，同名配置只会加载1次，不同配置可以并行加载
+     *
+     * @param name 配置名称，可以是逗号分隔的多个配置名
+     * @return 加载完成时结束的future
+     */
+    CompletableFuture<IChangeableConfig> getConfigAsync(String name);
+
     /**
      * 获取一个IConfig配置对象，并注册一个listener，注册完成会回调
      *
@@ -41,6 +51,13 @@ public interface IConfigFactory {
      */
     IChangeableConfig getConfig(String name, IChangeListener listener, boolean loadAfterRegister);
 
+    /**
+     * 批量预加载配置，多个配置的读取请求同时发出并一起等待，减少启动时的串行等待
+     *
+     * @param names 配置名称
+     */
+    void preload(Collection<String> names);
+
     /**
      * 是否加载了对应名称的配置
      *
@@ -7,14 +7,27 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ijson.config.api.IChangeListener;
 import com.ijson.config.api.IChangeableConfig;
 import com.ijson.config.api.IConfigFactory;
+import com.ijson.config.helper.StartupReport;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -22,24 +35,103 @@ import java.util.stream.Collectors;
  */
 @SuppressWarnings({"ALL", "AlibabaAbstractMethodOrInterfaceMethodMustUseJavadoc"})
 public abstract class AbstractConfigFactory implements IConfigFactory {
+    private static final CharMatcher SEPARATOR = CharMatcher.anyOf(",; |");
     private final ConcurrentMap<String, IChangeableConfig> m = Maps.newConcurrentMap();
 
+    /**
+     * 正在创建中的配置,同名配置只创建1次,不同配置之间互不阻塞
+     */
+    private final ConcurrentMap<String, Creation> creating = Maps.newConcurrentMap();
+
     @Override
     public IChangeableConfig getConfig(String name) {
+        onRequest(name);
         IChangeableConfig config = m.get(name);
-        if (config == null) {
-            synchronized (this) {
-                config = m.get(name);
-                if (config == null) {
-                    config = newConfig(name);
-                    IChangeableConfig real = m.putIfAbsent(name, config);
-                    if (real != null) {
-                        config = real;
-                    }
+        if (config != null) {
+            return config;
+        }
+        Creation future = new Creation();
+        Creation prev = creating.putIfAbsent(name, future);
+        if (prev != null) {
+            if (prev.owner == Thread.currentThread()) {
+                // 当前线程正在创建这个配置,比如在创建过程中又请求了自己,等待只会死锁
+                if (prev.started.get()) {
+                    throw new IllegalStateException("recursive getConfig while creating " + name);
                 }
+                // 当前线程占用了但还没开始创建,比如预加载期间,直接在当前线程创建
+                create(name, prev);
             }
+            return join(prev);
+        }
+        create(name, future);
+        return join(future);
+    }
+
+    @Override
+    public CompletableFuture<IChangeableConfig> getConfigAsync(String name) {
+        onRequest(name);
+        IChangeableConfig config = m.get(name);
+        if (config != null) {
+            return CompletableFuture.completedFuture(config);
+        }
+        Creation future = new Creation();
+        Creation prev = creating.putIfAbsent(name, future);
+        if (prev != null) {
+            return prev.thenApply(Function.identity());
+        }
+        try {
+            AsyncHolder.EXECUTOR.execute(() -> create(name, future));
+        } catch (RejectedExecutionException e) {
+            creating.remove(name, future);
+            future.completeExceptionally(e);
+        }
+        // 返回依赖的future,调用方complete或cancel不影响其他等待方
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * 应用请求了1个配置,子类可以记录下来用于下次启动时预加载
+     *
+     * @param name 配置名
+     */
+    protected void onRequest(String name) {
+    }
+
+    private void create(String name, Creation future) {
+        if (!future.started.compareAndSet(false, true)) {
+            // 已经有线程在创建
+            return;
+        }
+        future.owner = Thread.currentThread();
+        try {
+            // 可能在登记future之前刚刚有别的线程创建完成
+            IChangeableConfig config = m.get(name);
+            if (config == null) {
+                try (StartupReport.Timer ignored = StartupReport.start("load:" + name)) {
+                    config = register(name, newConfig(name));
+                }
+            }
+            future.complete(config);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            creating.remove(name, future);
+        }
+    }
+
+    private static IChangeableConfig join(CompletableFuture<IChangeableConfig> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
         }
-        return config;
     }
 
     @Override
@@ -59,10 +151,102 @@ public abstract class AbstractConfigFactory implements IConfigFactory {
         return m.containsKey(name);
     }
 
+    @Override
+    public void preload(Collection<String> names) {
+        Set<String> singles = Sets.newLinkedHashSet();
+        List<String> merged = Lists.newArrayList();
+        for (String name : names) {
+            if (SEPARATOR.matchesAnyOf(name)) {
+                singles.addAll(Splitter.on(SEPARATOR).trimResults().omitEmptyStrings().splitToList(name));
+                merged.add(name);
+            } else {
+                singles.add(name);
+            }
+        }
+        if (!awaitPreloadReady()) {
+            return;
+        }
+        // 先占住这些配置,预加载期间应用请求同名配置时等待该配置自己的加载结果,不会重复创建;
+        // 本地有副本的配置创建很快,不占用,应用请求时直接创建
+        Map<String, Creation> claimed = Maps.newLinkedHashMap();
+        for (String name : singles) {
+            if (m.containsKey(name) || hasLocalCopy(name)) {
+                continue;
+            }
+            Creation future = new Creation();
+            if (creating.putIfAbsent(name, future) == null) {
+                claimed.put(name, future);
+            }
+        }
+        try {
+            if (!claimed.isEmpty()) {
+                doPreload(claimed.keySet());
+            }
+        } finally {
+            claimed.forEach((name, future) -> {
+                IChangeableConfig config = m.get(name);
+                if (config != null) {
+                    future.complete(config);
+                    creating.remove(name, future);
+                } else {
+                    // 没有批量加载成功的逐个创建
+                    create(name, future);
+                }
+            });
+        }
+        merged.forEach(this::getConfig);
+    }
+
+    /**
+     * 等待可以开始批量加载,比如和zookeeper建立连接;在占用配置名之前调用,等待期间不阻塞应用的请求
+     *
+     * @return 返回false时放弃预加载
+     */
+    protected boolean awaitPreloadReady() {
+        return true;
+    }
+
+    /**
+     * 配置是否可以直接从本地副本创建,这样的配置不参与预加载
+     *
+     * @param name 配置名
+     * @return 默认false
+     */
+    protected boolean hasLocalCopy(String name) {
+        return false;
+    }
+
+    /**
+     * 批量加载尚未加载的单个配置,每个配置加载好后立即通过 {@link #register} 登记,等待该配置的请求随即返回;
+     * 默认不处理,没有登记的配置随后逐个创建
+     *
+     * @param names 配置名称
+     */
+    protected void doPreload(Collection<String> names) {
+    }
+
+    /**
+     * 登记已经创建好的配置,同名配置已存在时以已存在的为准;正在等待该配置的请求随即返回
+     *
+     * @param name   配置名
+     * @param config 配置
+     * @return 实际登记的配置
+     */
+    protected IChangeableConfig register(String name, IChangeableConfig config) {
+        IChangeableConfig real = m.putIfAbsent(name, config);
+        if (real == null) {
+            real = config;
+        }
+        Creation future = creating.get(name);
+        if (future != null && future.complete(real)) {
+            creating.remove(name, future);
+        }
+        return real;
+    }
+
     private IChangeableConfig newConfig(String name) {
-        CharMatcher matcher = CharMatcher.anyOf(",; |");
-        if (matcher.matchesAnyOf(name)) {
-            List<String> names = Splitter.on(matcher).trimResults().omitEmptyStrings().splitToList(name);
+        if (SEPARATOR.matchesAnyOf(name)) {
+            List<String> names = Splitter.on(SEPARATOR).trimResults().omitEmptyStrings().splitToList(name);
             List<IChangeableConfig> list = Lists.newArrayList();
             list.addAll(names.stream().map(this::getConfig).collect(Collectors.toList()));
             return new MergedConfig(list);
@@ -73,6 +257,28 @@ public abstract class AbstractConfigFactory implements IConfigFactory {
 
     protected abstract IChangeableConfig doCreate(String name);
 
+    /**
+     * 正在创建的配置,记录创建它的线程,同一线程重入时不能等待自己
+     */
+    private static final class Creation extends CompletableFuture<IChangeableConfig> {
+        private volatile Thread owner = Thread.currentThread();
+        private final AtomicBoolean started = new AtomicBoolean(false);
+    }
+
+    /**
+     * 异步创建配置的线程池,每个任务最多可能等待1个zk.connect.timeout,线程数有上限,多出的任务排队
+     */
+    private static class AsyncHolder {
+        private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+        private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 1,
+                TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-create-%d").build());
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
     @Override
     public List<IChangeableConfig> getAllConfig() {
         return ImmutableList.copyOf(m.values());
@@ -0,0 +1,99 @@
+package com.ijson.config.base;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableSet;
+import com.ijson.config.api.IChangeSet;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * @author *
+ */
+public final class ChangeSet implements IChangeSet {
+
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Set<String> modified;
+    private final long version;
+
+    private ChangeSet(Set<String> added, Set<String> removed, Set<String> modified, long version) {
+        this.added = added;
+        this.removed = removed;
+        this.modified = modified;
+        this.version = version;
+    }
+
+    /**
+     * 对比两份解析后的配置
+     *
+     * @param before  旧配置,为null时所有key都算新增
+     * @param after   新配置
+     * @param version 新配置快照的版本号
+     * @return 变化的key集合
+     */
+    public static ChangeSet between(Map<String, String> before, Map<String, String> after, long version) {
+        ImmutableSet.Builder<String> added = ImmutableSet.builder();
+        ImmutableSet.Builder<String> modified = ImmutableSet.builder();
+        ImmutableSet.Builder<String> removed = ImmutableSet.builder();
+        if (before == null || before.isEmpty()) {
+            added.addAll(after.keySet());
+        } else {
+            for (Map.Entry<String, String> i : after.entrySet()) {
+                String old = before.get(i.getKey());
+                if (old == null) {
+                    added.add(i.getKey());
+                } else if (!Objects.equals(old, i.getValue())) {
+                    modified.add(i.getKey());
+                }
+            }
+            for (String key : before.keySet()) {
+                if (!after.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+        return new ChangeSet(added.build(), removed.build(), modified.build(), version);
+    }
+
+    @Override
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    @Override
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public Set<String> getModified() {
+        return modified;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return added.contains(key) || removed.contains(key) || modified.contains(key);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("version", version)
+                .add("added", added)
+                .add("removed", removed)
+                .add("modified", modified)
+                .toString();
+    }
+}
@@ -1,16 +1,22 @@
 package com.ijson.config.base;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.ijson.config.api.IChangeListener;
+import com.ijson.config.api.IChangeSetListener;
 import com.ijson.config.api.IChangeable;
 import com.ijson.config.api.IChangeableConfig;
-import com.ijson.config.api.IConfig;
 import com.ijson.config.helper.ZookeeperHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * @author cuiyongxu
@@ -20,7 +26,7 @@ public class ChangeableConfig extends Config implements IChangeableConfig {
     public static final Logger log = LoggerFactory.getLogger(ChangeableConfig.class);
 
     private final String name;
-    private final IChangeable eventBus;
+    private final EventBus eventBus;
     private String profile = ConfigConstants.PROFILE;
 
     public ChangeableConfig(String name) {
@@ -52,29 +58,66 @@ public class ChangeableConfig extends Config implements IChangeableConfig {
         eventBus.addListener(listener, loadAfterRegister);
     }
 
+    @Override
+    public void addListener(String keyOrPrefix, IChangeListener listener) {
+        eventBus.addListener(keyOrPrefix, listener);
+    }
+
+    @Override
+    public void addListener(String keyOrPrefix, IChangeListener listener, boolean loadAfterRegister) {
+        eventBus.addListener(keyOrPrefix, listener, loadAfterRegister);
+    }
+
     @Override
     public void removeListener(IChangeListener listener) {
         eventBus.removeListener(listener);
     }
 
+    @Override
+    public void addListener(IChangeSetListener listener) {
+        eventBus.addListener(listener);
+    }
+
+    @Override
+    public void addListener(IChangeSetListener listener, boolean loadAfterRegister) {
+        eventBus.addListener(listener, loadAfterRegister);
+    }
+
+    @Override
+    public void removeListener(IChangeSetListener listener) {
+        eventBus.removeListener(listener);
+    }
+
     @Override
     public void notifyListeners() {
         eventBus.notifyListeners();
     }
 
+    /**
+     * 获取各个listener的回调耗时统计
+     *
+     * @return listener描述到耗时统计的映射
+     */
+    public Map<String, ListenerLatency> getListenerLatency() {
+        return eventBus.getListenerLatency();
+    }
+
     /**
      * 判断新接收到的数据和以前相比是否发生了变化
      *
      * @param now 新数据
-     * @return 逐字节对比，不一样就返回true
+     * @return 先比较长度再比较64位摘要，不一样就返回true
      */
     public boolean isChanged(byte[] now) {
         if (now == null) {
             return true;
         }
-        byte[] old = getContent();
-        log.debug("change detecting before: {} after:{}", ZookeeperHelper.newString(old), ZookeeperHelper.newString(now));
-        return !Arrays.equals(now, old);
+        ConfigSnapshot old = getSnapshot();
+        if (log.isDebugEnabled()) {
+            log.debug("change detecting before: {} after:{}", ZookeeperHelper.newString(old.getContent()),
+                    ZookeeperHelper.newString(now));
+        }
+        return now.length != old.getContent().length || ContentDigest.of(now) != old.getDigest();
     }
 
 
@@ -82,10 +125,25 @@ public class ChangeableConfig extends Config implements IChangeableConfig {
 
 
         private final Set<IChangeListener> listeners = Sets.newConcurrentHashSet();
-        private final IConfig config;
+        private final Set<IChangeSetListener> changeSetListeners = Sets.newConcurrentHashSet();
+        /**
+         * 按完整key注册的listener
+         */
+        private final ConcurrentMap<String, Set<IChangeListener>> keyListeners = Maps.newConcurrentMap();
+        /**
+         * 按前缀注册的listener,有序存放以便用变化的key快速定位
+         */
+        private final ConcurrentNavigableMap<String, Set<IChangeListener>> prefixListeners = new ConcurrentSkipListMap<>();
+        private final ChangeableConfig config;
+        /**
+         * 上次通知时的配置快照,只有注册了IChangeSetListener时才维护
+         */
+        private ConfigSnapshot notified;
+        private final ListenerDispatcher dispatcher;
 
-        public EventBus(IConfig config) {
+        public EventBus(ChangeableConfig config) {
             this.config = config;
+            this.dispatcher = new ListenerDispatcher(config.getName());
         }
 
         @Override
@@ -98,11 +156,8 @@ public class ChangeableConfig extends Config implements IChangeableConfig {
             if (listener != null && !listeners.contains(listener)) {
                 listeners.add(listener);
                 if (loadAfterRegister) {
-                    try {
-                        listener.changed(config);
-                    } catch (Exception e) {
-                        log.error("cannot reload {} {}", config.getName(), e);
-                    }
+                    // 经过listener的邮箱,异步分发时和之后的变更回调保持顺序
+                    dispatcher.dispatch(listener, ListenerDispatcher.Kind.ALL, () -> listener.changed(config));
                 }
             }
         }
@@ -111,21 +166,214 @@ public class ChangeableConfig extends Config implements IChangeableConfig {
         public void removeListener(IChangeListener listener) {
             if (listener != null) {
                 listeners.remove(listener);
+                removeScoped(keyListeners, listener);
+                removeScoped(prefixListeners, listener);
+                dispatcher.remove(listener);
+            }
+        }
+
+        private void removeScoped(ConcurrentMap<String, Set<IChangeListener>> index, IChangeListener listener) {
+            for (Map.Entry<String, Set<IChangeListener>> i : index.entrySet()) {
+                i.getValue().remove(listener);
+                if (i.getValue().isEmpty()) {
+                    index.remove(i.getKey(), i.getValue());
+                }
             }
         }
 
+        @Override
+        public void addListener(String keyOrPrefix, IChangeListener listener) {
+            addListener(keyOrPrefix, listener, true);
+        }
+
+        @Override
+        public void addListener(String keyOrPrefix, IChangeListener listener, boolean loadAfterRegister) {
+            if (Strings.isNullOrEmpty(keyOrPrefix)) {
+                addListener(listener, loadAfterRegister);
+                return;
+            }
+            if (listener == null) {
+                return;
+            }
+            track();
+            boolean added;
+            if (keyOrPrefix.charAt(keyOrPrefix.length() - 1) == '*') {
+                String prefix = keyOrPrefix.substring(0, keyOrPrefix.length() - 1);
+                added = prefixListeners.computeIfAbsent(prefix, k -> Sets.newConcurrentHashSet()).add(listener);
+            } else {
+                added = keyListeners.computeIfAbsent(keyOrPrefix, k -> Sets.newConcurrentHashSet()).add(listener);
+            }
+            if (added && loadAfterRegister) {
+                dispatcher.dispatch(listener, ListenerDispatcher.Kind.KEY, () -> listener.changed(config));
+            }
+        }
+
+        /**
+         * 找出关心本次变化key的listener,同一个listener只回调1次
+         *
+         * @param changes 本次变化
+         * @return listener集合
+         */
+        private Set<IChangeListener> scopedListeners(ChangeSet changes) {
+            Set<IChangeListener> matched = Sets.newLinkedHashSet();
+            NavigableSet<String> keys = Sets.newTreeSet();
+            keys.addAll(changes.getAdded());
+            keys.addAll(changes.getRemoved());
+            keys.addAll(changes.getModified());
+            if (!keyListeners.isEmpty()) {
+                for (String key : keys) {
+                    Set<IChangeListener> found = keyListeners.get(key);
+                    if (found != null) {
+                        matched.addAll(found);
+                    }
+                }
+            }
+            for (Map.Entry<String, Set<IChangeListener>> i : prefixListeners.entrySet()) {
+                String first = keys.ceiling(i.getKey());
+                if (first != null && first.startsWith(i.getKey())) {
+                    matched.addAll(i.getValue());
+                }
+            }
+            return matched;
+        }
+
+        @Override
+        public void addListener(IChangeSetListener listener) {
+            addListener(listener, true);
+        }
+
+        @Override
+        public void addListener(IChangeSetListener listener, boolean loadAfterRegister) {
+            if (listener != null && !changeSetListeners.contains(listener)) {
+                ConfigSnapshot now = track();
+                changeSetListeners.add(listener);
+                if (loadAfterRegister) {
+                    // 首次回调所有key都算新增,即使为空也回调
+                    dispatcher.dispatch(listener, ListenerDispatcher.Kind.CHANGE_SET,
+                            new ChangeSetDelivery(listener, new Delta(null, now), true));
+                }
+            }
+        }
+
+        @Override
+        public void removeListener(IChangeSetListener listener) {
+            if (listener != null) {
+                changeSetListeners.remove(listener);
+                dispatcher.remove(listener);
+            }
+        }
+
+        /**
+         * 开始记录通知时的快照,用于下次通知时计算变化
+         *
+         * @return 当前快照
+         */
+        private synchronized ConfigSnapshot track() {
+            ConfigSnapshot now = config.getSnapshot();
+            if (notified == null) {
+                notified = now;
+            }
+            return now;
+        }
+
+        /**
+         * 与上次通知时的快照对比,每次通知只计算1次
+         *
+         * @return 没有注册IChangeSetListener和按key注册的listener时返回null
+         */
+        private synchronized Delta diff() {
+            if (changeSetListeners.isEmpty() && keyListeners.isEmpty() && prefixListeners.isEmpty()) {
+                notified = null;
+                return null;
+            }
+            ConfigSnapshot now = config.getSnapshot();
+            ConfigSnapshot before = notified;
+            notified = now;
+            return new Delta(before == null ? null : before.getAll(), now);
+        }
+
         @Override
         public void notifyListeners() {
+            Delta delta = diff();
+            if (delta != null && !delta.changes.isEmpty()) {
+                ChangeSet changes = delta.changes;
+                log.info("{} changed, added:{}, removed:{}, modified:{}", config.getName(),
+                        changes.getAdded().size(), changes.getRemoved().size(), changes.getModified().size());
+                for (IChangeSetListener i : changeSetListeners) {
+                    dispatcher.dispatch(i, ListenerDispatcher.Kind.CHANGE_SET, new ChangeSetDelivery(i, delta));
+                }
+                for (IChangeListener i : scopedListeners(changes)) {
+                    log.info("{} changed, notify {}", config.getName(), i);
+                    dispatcher.dispatch(i, ListenerDispatcher.Kind.KEY, () -> i.changed(config));
+                }
+            }
             for (IChangeListener i : listeners) {
                 log.info("{} changed, notify {}", config.getName(), i);
-                try {
-                    // 避免并发多线程加载导致冲突
-                    // synchronized (config) {
-                    i.changed(config);
-                    //}
-                } catch (Exception e) {
-                    log.error("cannot reload {}  {}", config.getName(), e);
+                // 避免并发多线程加载导致冲突
+                // synchronized (config) {
+                dispatcher.dispatch(i, ListenerDispatcher.Kind.ALL, () -> i.changed(config));
+                //}
+            }
+        }
+
+        Map<String, ListenerLatency> getListenerLatency() {
+            return dispatcher.getLatency();
+        }
+
+        /**
+         * 两次通知之间的变化,合并回调时需要用到前后快照
+         */
+        private static class Delta {
+            private final Map<String, String> before;
+            private final ConfigSnapshot after;
+            private final ChangeSet changes;
+
+            Delta(Map<String, String> before, ConfigSnapshot after) {
+                this(before, after, ChangeSet.between(before, after.getAll(), after.getVersion()));
+            }
+
+            Delta(Map<String, String> before, ConfigSnapshot after, ChangeSet changes) {
+                this.before = before;
+                this.after = after;
+                this.changes = changes;
+            }
+        }
+
+        /**
+         * 合并时从最早的快照对比到最新的快照,不会漏掉中间版本的变化
+         */
+        private class ChangeSetDelivery implements ListenerDispatcher.Delivery {
+            private final IChangeSetListener listener;
+            private final Delta delta;
+            /**
+             * 注册后的首次回调,没有变化也回调
+             */
+            private final boolean initial;
+
+            ChangeSetDelivery(IChangeSetListener listener, Delta delta) {
+                this(listener, delta, false);
+            }
+
+            ChangeSetDelivery(IChangeSetListener listener, Delta delta, boolean initial) {
+                this.listener = listener;
+                this.delta = delta;
+                this.initial = initial;
+            }
+
+            @Override
+            public void deliver() {
+                if (initial || !delta.changes.isEmpty()) {
+                    listener.changed(config, delta.changes);
+                }
+            }
+
+            @Override
+            public ListenerDispatcher.Delivery coalesce(ListenerDispatcher.Delivery newer) {
+                if (!(newer instanceof ChangeSetDelivery)) {
+                    return newer;
                 }
+                Delta latest = ((ChangeSetDelivery) newer).delta;
+                return new ChangeSetDelivery(listener, new Delta(delta.before, latest.after), initial);
             }
         }
     }
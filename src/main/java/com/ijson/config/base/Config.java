@@ -2,6 +2,7 @@ package com.ijson.config.base;
 
 
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.UnaryOperator;
 
 import static com.ijson.config.base.ConfigConstants.UTF8;
 
@@ -20,176 +23,105 @@ public class Config extends Properties {
 
     public static final Logger log = LoggerFactory.getLogger(Config.class);
 
-    private boolean parsed = false;
-    private byte[] content;
-
-    public synchronized byte[] getContent() {
-        if (content == null) {
-            Map<String, String> m = getAll();
-            if (m.isEmpty()) {
-                content = new byte[0];
-            } else {
-                StringBuilder sbd = new StringBuilder();
-                for (Map.Entry<String, String> i : m.entrySet()) {
-                    sbd.append(i.getKey()).append('=').append(i.getValue()).append('\n');
-                }
-                content = sbd.toString().getBytes(UTF8);
-            }
-        }
-        return content;
+    private static final AtomicReferenceFieldUpdater<Config, ConfigSnapshot> SNAPSHOT =
+            AtomicReferenceFieldUpdater.newUpdater(Config.class, ConfigSnapshot.class, "snapshot");
+
+    /**
+     * 当前配置快照,读取方只读这一个volatile引用,不加锁
+     */
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.EMPTY;
+
+    /**
+     * 获取当前配置快照,原始字节和kv在首次读取时生成
+     *
+     * @return 配置快照
+     */
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public byte[] getContent() {
+        return snapshot.getContent();
+    }
+
+    /**
+     * 当前快照的版本号,内容每更新1次加1
+     *
+     * @return 快照版本号
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
     }
 
     public void copyOf(String s) {
-        this.content = s.getBytes(UTF8);
-        parsed = false;
+        copyOf(s.getBytes(UTF8));
     }
 
     public void copyOf(byte[] content) {
-        this.content = content;
-        parsed = false;
+        final byte[] bytes = content == null ? new byte[0] : content;
+        publish(prev -> new ConfigSnapshot(bytes, null, prev.getVersion() + 1));
     }
 
     @Override
     public void copyOf(Map<String, String> m) {
-        super.copyOf(m);
-        resetContent();
+        final Map<String, String> data = ImmutableMap.copyOf(m);
+        publish(prev -> new ConfigSnapshot(null, data, prev.getVersion() + 1));
     }
 
     @Override
     public void copyOf(java.util.Properties props) {
-        super.copyOf(props);
-        resetContent();
+        final Map<String, String> data = Maps.fromProperties(props);
+        publish(prev -> new ConfigSnapshot(null, data, prev.getVersion() + 1));
     }
 
     @Override
     public Properties putAll(Map<String, String> items) {
-        super.putAll(items);
-        resetContent();
+        publish(prev -> {
+            Map<String, String> all = Maps.newHashMap(prev.getAll());
+            all.putAll(items);
+            return new ConfigSnapshot(null, ImmutableMap.copyOf(all), prev.getVersion() + 1);
+        });
         return this;
     }
 
     @Override
     public Properties putAll(java.util.Properties props) {
-        super.putAll(props);
-        resetContent();
-        return this;
-    }
-
-    private void resetContent() {
-        parsed = true;
-        this.content = null;
-    }
-
-    private synchronized void parse() {
-        if (!parsed) {
-            Map<String, String> m = Maps.newLinkedHashMap();
-            final byte[] bytes = content;
-            if (bytes != null) {
-                String txt = new String(bytes, UTF8);
-                for (String i : lines(txt, true)) {
-                    int pos = i.indexOf('=');
-                    if (pos != -1) {
-                        String k = i.substring(0, pos).trim();
-                        int next = pos + 1;
-                        if (next < i.length()) {
-                            try {
-                                m.put(k, unEscapeJava(i.substring(next).trim()));
-                            } catch (Exception e) {
-                                log.error("cannot escape:{}, content={}", i, content);
-                            }
-                        } else {
-                            m.put(k, "");
-                        }
-                    }
+        publish(prev -> {
+            Map<String, String> all = Maps.newHashMap(prev.getAll());
+            for (String key : props.stringPropertyNames()) {
+                Object obj = props.get(key);
+                if (obj != null) {
+                    all.put(key, String.valueOf(obj));
                 }
-                super.copyOf(m);
             }
-            parsed = true;
-        }
+            return new ConfigSnapshot(null, ImmutableMap.copyOf(all), prev.getVersion() + 1);
+        });
+        return this;
     }
 
     /**
-     * copyFrom StringEscapeUtils.unescapeJava
-     * @param value
-     * @return
+     * 基于当前快照生成新快照并原子替换,并发写入时重试
+     *
+     * @param next 根据旧快照生成新快照
      */
-    private String unEscapeJava(String value) {
-        if (value == null || value.length() == 0) {
-            return value;
-        }
-        StringBuilder buf = null;
-        int len = value.length();
-        int len1 = len - 1;
-        for (int i = 0; i < len; i++) {
-            char ch = value.charAt(i);
-            if (ch == '\\' && i < len1) {
-                int j = i;
-                i++;
-                ch = value.charAt(i);
-                switch (ch) {
-                    case '\\':
-                        ch = '\\';
-                        break;
-                    case '\"':
-                        ch = '\"';
-                        break;
-                    case '\'':
-                        ch = '\'';
-                        break;
-                    case 't':
-                        ch = '\t';
-                        break;
-                    case 'n':
-                        ch = '\n';
-                        break;
-                    case 'r':
-                        ch = '\r';
-                        break;
-                    case 'b':
-                        ch = '\b';
-                        break;
-                    case 'f':
-                        ch = '\f';
-                        break;
-                    case 'u':
-                    case 'U':
-                        ch = (char) Integer.parseInt(value.substring(i + 1, i + 5), 16);
-                        i = i + 4;
-                        break;
-                    default:
-                        j--;
-                }
-                if (buf == null) {
-                    buf = new StringBuilder(len);
-                    if (j > 0) {
-                        buf.append(value.substring(0, j));
-                    }
-                }
-                buf.append(ch);
-            } else if (buf != null) {
-                buf.append(ch);
-            }
-        }
-        if (buf != null) {
-            return buf.toString();
-        }
-        return value;
+    private void publish(UnaryOperator<ConfigSnapshot> next) {
+        ConfigSnapshot prev;
+        ConfigSnapshot now;
+        do {
+            prev = snapshot;
+            now = next.apply(prev);
+        } while (!SNAPSHOT.compareAndSet(this, prev, now));
+        resetTyped();
     }
 
     @Override
     public String get(String key) {
-        if (!parsed) {
-            parse();
-        }
-        return super.get(key);
+        return snapshot.getAll().get(key);
     }
 
     @Override
     public Map<String, String> getAll() {
-        if (!parsed) {
-            parse();
-        }
-        return super.getAll();
+        return snapshot.getAll();
     }
 
     public String getString() {
@@ -33,6 +33,11 @@ public interface ConfigConstants {
     String PROCESS_PORT = "process.port";
     String COMPUTER_NAME = "COMPUTERNAME";
     String UNKNOWN_HOST = "UnknownHost";
+    String BOOTSTRAP_CACHE = ".bootstrap.cache";
+    String HOST_CACHE = ".host.cache";
+    String HOSTNAME = "HOSTNAME";
+    String ETC_HOSTNAME = "/etc/hostname";
+    String HOST_TIMEOUT = "process.host.timeout";
     List<String> APPLICATION_FILES = Lists.newArrayList("application-default.properties", "application.properties");
     Integer CACHE_FILE_SIZE = 2;
     Integer TRIES_GET_SERVER_NAME = 30;
@@ -44,9 +49,24 @@ public interface ConfigConstants {
         String ZOOKEEPER_AUTHENTICATION = "zk.auth";
         String ZOOKEEPER_AUTHENTICATION_TYPE = "zk.authType";
         String ZOOKEEPER_BASE_PATH = "zk.basePath";
+        String ZOOKEEPER_RELOAD_QUIET = "zk.reload.quiet";
+        String ZOOKEEPER_RELOAD_THREADS = "zk.reload.threads";
+        String ZOOKEEPER_CONNECT_TIMEOUT = "zk.connect.timeout";
+        String ZOOKEEPER_TREE_CACHE = "zk.treeCache";
+        String ZOOKEEPER_PERSISTENT_WATCH = "zk.persistentWatch";
+        String ZOOKEEPER_COMPRESS_THRESHOLD = "zk.compress.threshold";
+        String ZOOKEEPER_WARMUP_DELAY = "zk.warmup.delay";
+        String ZOOKEEPER_WARMUP_JITTER = "zk.warmup.jitter";
+        String ZOOKEEPER_WARMUP_THREADS = "zk.warmup.threads";
+        String ZOOKEEPER_WARMUP_IMMEDIATE = "zk.warmup.immediate";
         String IN_ZOOKEEPER = "in-zookeeper";
         String CONFIG_URL = "config.url";
         String ZK_SERVER_URL = "custom.zk.server.url";
+        String CONFIG_BUNDLE = "config.bundle";
+        String CONFIG_PRELOAD = "config.preload";
+        String LISTENER_ASYNC = "config.listener.async";
+        String LISTENER_THREADS = "config.listener.threads";
+        String LISTENER_TIMEOUT = "config.listener.timeout";
     }
 
 
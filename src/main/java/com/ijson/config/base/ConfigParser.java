@@ -0,0 +1,234 @@
+package com.ijson.config.base;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 直接在UTF8字节上解析kv格式的配置
+ * <p>
+ * 一次扫描找出行、'=' 和转义字符的边界,只为最终的key和value创建字符串。
+ * 行首尾按 {@link com.google.common.base.CharMatcher#whitespace()} 去空白,
+ * key和value再按 {@link String#trim()} 去空白,结果与先解码成字符串再逐行处理完全一致
+ *
+ * @author *
+ */
+final class ConfigParser {
+
+    public static final Logger log = LoggerFactory.getLogger(ConfigParser.class);
+
+    private ConfigParser() {
+    }
+
+    static Map<String, String> parse(byte[] bytes) {
+        Map<String, String> m = Maps.newLinkedHashMap();
+        final int n = bytes.length;
+        int start = 0;
+        while (start < n) {
+            int eq = -1;
+            int escape = -1;
+            int i = start;
+            for (; i < n; i++) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    break;
+                }
+                if (b == '=') {
+                    if (eq < 0) {
+                        eq = i;
+                    }
+                } else if (b == '\\' && eq >= 0 && escape < 0) {
+                    escape = i;
+                }
+            }
+            int lineEnd = i;
+            int s = trimLeading(bytes, start, lineEnd);
+            int e = trimTrailing(bytes, s, lineEnd);
+            start = lineEnd + 1;
+            if (s >= e || eq < 0 || isComment(bytes, s, e)) {
+                continue;
+            }
+
+            int ks = trimLow(bytes, s, eq);
+            int ke = trimLowTrailing(bytes, ks, eq);
+            String k = new String(bytes, ks, ke - ks, UTF8);
+            if (eq + 1 < e) {
+                int vs = trimLow(bytes, eq + 1, e);
+                int ve = trimLowTrailing(bytes, vs, e);
+                String v = new String(bytes, vs, ve - vs, UTF8);
+                if (escape >= 0) {
+                    try {
+                        v = unEscapeJava(v);
+                    } catch (Exception ex) {
+                        log.error("cannot escape:{}, content={}", new String(bytes, s, e - s, UTF8), bytes);
+                        continue;
+                    }
+                }
+                m.put(k, v);
+            } else {
+                m.put(k, "");
+            }
+        }
+        return ImmutableMap.copyOf(m);
+    }
+
+    private static boolean isComment(byte[] b, int s, int e) {
+        return b[s] == '#' || (b[s] == '/' && s + 1 < e && b[s + 1] == '/');
+    }
+
+    /**
+     * 跳过行首的空白,包括多字节编码的unicode空白
+     */
+    private static int trimLeading(byte[] b, int s, int e) {
+        while (s < e) {
+            if (isAsciiWhitespace(b[s])) {
+                s++;
+            } else if (s + 1 < e && isWhitespace2(b[s], b[s + 1])) {
+                s += 2;
+            } else if (s + 2 < e && isWhitespace3(b[s], b[s + 1], b[s + 2])) {
+                s += 3;
+            } else {
+                break;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * 去掉行尾的空白,包括多字节编码的unicode空白
+     */
+    private static int trimTrailing(byte[] b, int s, int e) {
+        while (e > s) {
+            if (isAsciiWhitespace(b[e - 1])) {
+                e--;
+            } else if (e - 2 >= s && isWhitespace2(b[e - 2], b[e - 1])) {
+                e -= 2;
+            } else if (e - 3 >= s && isWhitespace3(b[e - 3], b[e - 2], b[e - 1])) {
+                e -= 3;
+            } else {
+                break;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * 与 {@link String#trim()} 一致,跳过所有不大于空格的字符,这些字符在UTF8中都是单字节
+     */
+    private static int trimLow(byte[] b, int s, int e) {
+        while (s < e && (b[s] & 0xff) <= ' ') {
+            s++;
+        }
+        return s;
+    }
+
+    private static int trimLowTrailing(byte[] b, int s, int e) {
+        while (e > s && (b[e - 1] & 0xff) <= ' ') {
+            e--;
+        }
+        return e;
+    }
+
+    private static boolean isAsciiWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    /**
+     * U+0085, U+00A0
+     */
+    private static boolean isWhitespace2(byte b0, byte b1) {
+        return b0 == (byte) 0xC2 && (b1 == (byte) 0x85 || b1 == (byte) 0xA0);
+    }
+
+    /**
+     * U+1680, U+2000..U+200A, U+2028, U+2029, U+202F, U+205F, U+3000
+     */
+    private static boolean isWhitespace3(byte b0, byte b1, byte b2) {
+        int c0 = b0 & 0xff;
+        int c1 = b1 & 0xff;
+        int c2 = b2 & 0xff;
+        if (c0 == 0xE2) {
+            if (c1 == 0x80) {
+                return (c2 >= 0x80 && c2 <= 0x8A) || c2 == 0xA8 || c2 == 0xA9 || c2 == 0xAF;
+            }
+            return c1 == 0x81 && c2 == 0x9F;
+        }
+        if (c0 == 0xE1) {
+            return c1 == 0x9A && c2 == 0x80;
+        }
+        return c0 == 0xE3 && c1 == 0x80 && c2 == 0x80;
+    }
+
+    /**
+     * copyFrom StringEscapeUtils.unescapeJava
+     * @param value
+     * @return
+     */
+    static String unEscapeJava(String value) {
+        if (value == null || value.length() == 0) {
+            return value;
+        }
+        StringBuilder buf = null;
+        int len = value.length();
+        int len1 = len - 1;
+        for (int i = 0; i < len; i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i < len1) {
+                int j = i;
+                i++;
+                ch = value.charAt(i);
+                switch (ch) {
+                    case '\\':
+                        ch = '\\';
+                        break;
+                    case '\"':
+                        ch = '\"';
+                        break;
+                    case '\'':
+                        ch = '\'';
+                        break;
+                    case 't':
+                        ch = '\t';
+                        break;
+                    case 'n':
+                        ch = '\n';
+                        break;
+                    case 'r':
+                        ch = '\r';
+                        break;
+                    case 'b':
+                        ch = '\b';
+                        break;
+                    case 'f':
+                        ch = '\f';
+                        break;
+                    case 'u':
+                    case 'U':
+                        ch = (char) Integer.parseInt(value.substring(i + 1, i + 5), 16);
+                        i = i + 4;
+                        break;
+                    default:
+                        j--;
+                }
+                if (buf == null) {
+                    buf = new StringBuilder(len);
+                    if (j > 0) {
+                        buf.append(value.substring(0, j));
+                    }
+                }
+                buf.append(ch);
+            } else if (buf != null) {
+                buf.append(ch);
+            }
+        }
+        if (buf != null) {
+            return buf.toString();
+        }
+        return value;
+    }
+}
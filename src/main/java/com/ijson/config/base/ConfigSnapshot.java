@@ -0,0 +1,115 @@
+package com.ijson.config.base;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 配置在某一时刻的不可变快照,包含原始字节、解析后的kv以及版本号
+ * <p>
+ * 原始字节和kv至少有一个存在,另一个在首次读取时生成并缓存在快照中,同一快照只解析或序列化1次
+ *
+ * @author *
+ */
+public final class ConfigSnapshot {
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(new byte[0], ImmutableMap.of(), 0L);
+
+    private volatile byte[] content;
+    private volatile Map<String, String> data;
+    private final long version;
+    /**
+     * 原始字节的摘要,首次使用时计算,0表示尚未计算;并发计算结果相同,不需要同步
+     */
+    private long digest;
+
+    ConfigSnapshot(byte[] content, Map<String, String> data, long version) {
+        this.content = content;
+        this.data = data;
+        this.version = version;
+    }
+
+    /**
+     * 快照版本号,每次替换配置内容递增
+     *
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 配置的原始字节
+     *
+     * @return 字节数组
+     */
+    public byte[] getContent() {
+        byte[] c = content;
+        if (c == null) {
+            synchronized (this) {
+                c = content;
+                if (c == null) {
+                    c = serialize(data);
+                    content = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * 解析后的只读配置信息
+     *
+     * @return 只读配置信息
+     */
+    public Map<String, String> getAll() {
+        Map<String, String> m = data;
+        if (m == null) {
+            synchronized (this) {
+                m = data;
+                if (m == null) {
+                    m = ConfigParser.parse(content);
+                    data = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * 原始字节的64位摘要,用于快速判断内容是否变化
+     *
+     * @return 摘要
+     */
+    public long getDigest() {
+        long h = digest;
+        if (h == 0) {
+            h = ContentDigest.of(getContent());
+            digest = h;
+        }
+        return h;
+    }
+
+    private static byte[] serialize(Map<String, String> m) {
+        if (m.isEmpty()) {
+            return new byte[0];
+        }
+        StringBuilder sbd = new StringBuilder();
+        for (Map.Entry<String, String> i : m.entrySet()) {
+            sbd.append(i.getKey()).append('=').append(i.getValue()).append('\n');
+        }
+        return sbd.toString().getBytes(UTF8);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("version", version)
+                .add("length", content == null ? -1 : content.length)
+                .add("size", data == null ? -1 : data.size())
+                .toString();
+    }
+}
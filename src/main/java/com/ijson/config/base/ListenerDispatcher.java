@@ -0,0 +1,237 @@
+package com.ijson.config.base;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ijson.config.helper.ConfigHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.ijson.config.base.ConfigConstants.ConfKeys.*;
+
+/**
+ * 负责把配置变更回调分发给listener
+ * <p>
+ * 默认在通知线程上逐个回调;开启 config.listener.async 后在有界线程池上回调,
+ * 同一个listener的回调保持顺序,处理不过来时只保留最新版本,单次回调超过
+ * config.listener.timeout 毫秒会被中断,避免慢listener阻塞zookeeper事件线程
+ *
+ * @author *
+ */
+class ListenerDispatcher {
+
+    public static final Logger log = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+    private final String name;
+    /**
+     * 按(listener, 回调类型)分邮箱,同一个listener以不同方式注册时各自合并,互不覆盖
+     */
+    private final ConcurrentMap<List<Object>, Mailbox> mailboxes = Maps.newConcurrentMap();
+
+    ListenerDispatcher(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 分发一次回调
+     *
+     * @param listener 回调的listener,用于保证顺序和统计耗时
+     * @param kind     回调类型
+     * @param delivery 具体回调动作
+     */
+    void dispatch(Object listener, Kind kind, Delivery delivery) {
+        Mailbox box = mailboxes.computeIfAbsent(ImmutableList.of(listener, kind), k -> new Mailbox(kind.label(listener)));
+        if (Settings.ASYNC) {
+            box.offer(delivery);
+        } else {
+            box.deliver(delivery, false);
+        }
+    }
+
+    void remove(Object listener) {
+        mailboxes.keySet().removeIf(k -> k.get(0).equals(listener));
+    }
+
+    Map<String, ListenerLatency> getLatency() {
+        Map<String, ListenerLatency> m = Maps.newHashMap();
+        for (Mailbox i : mailboxes.values()) {
+            m.put(i.latency.getListener(), i.latency);
+        }
+        return ImmutableMap.copyOf(m);
+    }
+
+    /**
+     * listener的注册方式
+     */
+    enum Kind {
+        /**
+         * 任何变化都回调
+         */
+        ALL,
+        /**
+         * 按key或前缀注册,匹配的key变化时回调
+         */
+        KEY,
+        /**
+         * 按变化key回调
+         */
+        CHANGE_SET;
+
+        String label(Object listener) {
+            return this == ALL ? String.valueOf(listener) : listener + "#" + name().toLowerCase();
+        }
+    }
+
+    /**
+     * 一次回调动作,处理不过来时可以和更新的回调合并
+     */
+    @FunctionalInterface
+    interface Delivery {
+        void deliver() throws Exception;
+
+        /**
+         * 与更新的回调合并,默认只保留最新的
+         *
+         * @param newer 更新的回调
+         * @return 合并后的回调
+         */
+        default Delivery coalesce(Delivery newer) {
+            return newer;
+        }
+    }
+
+    /**
+     * 每个listener一个邮箱,同一时刻最多只有1个任务在线程池中处理它,从而保证顺序
+     */
+    private class Mailbox implements Runnable {
+        private final ListenerLatency latency;
+        private final AtomicReference<Delivery> pending = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Mailbox(String listener) {
+            this.latency = new ListenerLatency(listener);
+        }
+
+        void offer(Delivery delivery) {
+            Delivery prev;
+            Delivery next;
+            do {
+                prev = pending.get();
+                next = prev == null ? delivery : prev.coalesce(delivery);
+            } while (!pending.compareAndSet(prev, next));
+            if (prev != null) {
+                latency.coalesce();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.get() != null && scheduled.compareAndSet(false, true)) {
+                Settings.EXECUTOR.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Delivery delivery = pending.getAndSet(null);
+                if (delivery != null) {
+                    deliver(delivery, true);
+                }
+            } finally {
+                scheduled.set(false);
+                // 处理期间又有新的回调进来
+                schedule();
+            }
+        }
+
+        void deliver(Delivery delivery, boolean guarded) {
+            Guard guard = guarded ? new Guard(Thread.currentThread()) : null;
+            long start = System.nanoTime();
+            try {
+                delivery.deliver();
+            } catch (InterruptedException e) {
+                log.error("{} notify {} interrupted", name, latency.getListener());
+            } catch (Exception e) {
+                log.error("cannot reload {}  {}", name, e);
+            } finally {
+                long cost = System.nanoTime() - start;
+                latency.record(cost);
+                if (guard != null) {
+                    guard.finish();
+                }
+                if (cost > TimeUnit.SECONDS.toNanos(1)) {
+                    log.warn("{} notify {} cost {}ms", name, latency.getListener(), TimeUnit.NANOSECONDS.toMillis(cost));
+                }
+            }
+        }
+
+        /**
+         * 超时后中断正在回调的线程,回调结束后不再中断
+         */
+        private class Guard implements Runnable {
+            private final Thread worker;
+            private final ScheduledFuture<?> future;
+            private boolean finished = false;
+
+            Guard(Thread worker) {
+                this.worker = worker;
+                this.future = Settings.WATCHDOG.schedule(this, Settings.TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public synchronized void run() {
+                if (!finished) {
+                    log.error("{} notify {} timeout after {}ms, interrupt it", name, latency.getListener(), Settings.TIMEOUT);
+                    latency.timeout();
+                    worker.interrupt();
+                }
+            }
+
+            void finish() {
+                synchronized (this) {
+                    finished = true;
+                }
+                future.cancel(false);
+                // 清除可能残留的中断标记,避免影响线程池中的下一个回调
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private static class Settings {
+        private static final boolean ASYNC;
+        private static final long TIMEOUT;
+        private static final ThreadPoolExecutor EXECUTOR;
+        private static final ScheduledExecutorService WATCHDOG;
+
+        static {
+            Config app = ConfigHelper.getApplicationConfig();
+            ASYNC = app.getBool(LISTENER_ASYNC, false);
+            TIMEOUT = app.getLong(LISTENER_TIMEOUT, 30000L);
+            int threads = Math.max(1, app.getInt(LISTENER_THREADS, 4));
+            EXECUTOR = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-notify-%d").build());
+            EXECUTOR.allowCoreThreadTimeOut(true);
+            WATCHDOG = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-notify-watchdog").build());
+            ((ScheduledThreadPoolExecutor) WATCHDOG).setRemoveOnCancelPolicy(true);
+            if (ASYNC) {
+                log.info("async listener dispatch, threads:{}, timeout:{}ms", threads, TIMEOUT);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ijson.config.base;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个listener的回调耗时统计
+ *
+ * @author *
+ */
+public class ListenerLatency {
+
+    private final String listener;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private volatile long lastNanos;
+
+    ListenerLatency(String listener) {
+        this.listener = listener;
+    }
+
+    void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        lastNanos = nanos;
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    void timeout() {
+        timeouts.increment();
+    }
+
+    void coalesce() {
+        coalesced.increment();
+    }
+
+    public String getListener() {
+        return listener;
+    }
+
+    /**
+     * @return 回调次数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return 平均耗时,毫秒
+     */
+    public double getAvgMillis() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : totalNanos.sum() / (double) n / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return 最大耗时,毫秒
+     */
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    /**
+     * @return 最近一次耗时,毫秒
+     */
+    public long getLastMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastNanos);
+    }
+
+    /**
+     * @return 超时次数
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return 因为有更新版本而被合并掉的回调次数
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("listener", listener)
+                .add("count", getCount())
+                .add("avgMillis", getAvgMillis())
+                .add("maxMillis", getMaxMillis())
+                .add("timeouts", getTimeouts())
+                .add("coalesced", getCoalesced())
+                .toString();
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author *
@@ -13,7 +14,8 @@ public class ProcessInfo {
     private String name;
     private String profile;
     private String ip;
-    private String port;
+    private volatile String port;
+    private final List<Runnable> portListeners = new CopyOnWriteArrayList<>();
 
     public String getPath() {
         return path;
@@ -55,6 +57,27 @@ public class ProcessInfo {
         this.port = port;
     }
 
+    /**
+     * 后台识别出端口后设置并通知,profile查找顺序随之变化
+     *
+     * @param port 端口号
+     */
+    public void resolvePort(String port) {
+        this.port = port;
+        for (Runnable i : portListeners) {
+            i.run();
+        }
+    }
+
+    /**
+     * 注册端口识别完成的回调
+     *
+     * @param listener 回调
+     */
+    public void onPortResolved(Runnable listener) {
+        portListeners.add(listener);
+    }
+
     public List<String> orderedPath() {
         List<String> paths = Lists.newArrayList();
         if (!Strings.isNullOrEmpty(ip)) {
@@ -5,19 +5,26 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author *
  */
 public class Properties {
     private Map<String, String> m = ImmutableMap.of();
+    /**
+     * 当前配置内容对应的类型化值缓存,首次按类型读取时填充,配置内容替换时整体丢弃
+     */
+    private volatile ConcurrentMap<String, TypedValue> typed = Maps.newConcurrentMap();
 
     public void copyOf(Map<String, String> items) {
         this.m = ImmutableMap.copyOf(items);
+        resetTyped();
     }
 
     public void copyOf(java.util.Properties props) {
         this.m = Maps.fromProperties(props);
+        resetTyped();
     }
 
     /**
@@ -30,6 +37,7 @@ public class Properties {
         Map<String, String> all = Maps.newHashMap(this.m);
         all.putAll(items);
         this.m = ImmutableMap.copyOf(all);
+        resetTyped();
         return this;
     }
 
@@ -48,22 +56,42 @@ public class Properties {
             }
         }
         this.m = ImmutableMap.copyOf(all);
+        resetTyped();
         return this;
     }
 
+    protected void resetTyped() {
+        this.typed = Maps.newConcurrentMap();
+    }
+
+    /**
+     * 获取key对应的类型化值,缓存中的原始字符串与当前值不是同一个对象时重新解析
+     *
+     * @param key 查找的key
+     * @return 找不到或者为空字符串时返回null
+     */
+    private TypedValue typed(String key) {
+        String val = get(key);
+        if (Strings.isNullOrEmpty(val)) {
+            return null;
+        }
+        ConcurrentMap<String, TypedValue> cache = typed;
+        TypedValue v = cache.get(key);
+        if (v == null || v.raw != val) {
+            v = new TypedValue(val);
+            cache.put(key, v);
+        }
+        return v;
+    }
+
     public int getInt(String key) {
         return getInt(key, 0);
     }
 
     public int getInt(String key, int defaultVal) {
-        String val = get(key);
-        if (!Strings.isNullOrEmpty(val)) {
-            try {
-                return Integer.parseInt(val);
-            } catch (NumberFormatException ignored) {
-            }
-        }
-        return defaultVal;
+        TypedValue v = typed(key);
+        Long l = v == null ? null : v.asLong();
+        return l != null && l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? l.intValue() : defaultVal;
     }
 
     public long getLong(String key) {
@@ -71,14 +99,9 @@ public class Properties {
     }
 
     public long getLong(String key, long defaultVal) {
-        String val = get(key);
-        if (!Strings.isNullOrEmpty(val)) {
-            try {
-                return Long.parseLong(val);
-            } catch (NumberFormatException ignored) {
-            }
-        }
-        return defaultVal;
+        TypedValue v = typed(key);
+        Long l = v == null ? null : v.asLong();
+        return l != null ? l : defaultVal;
     }
 
     public boolean getBool(String key) {
@@ -87,10 +110,7 @@ public class Properties {
 
     public boolean getBool(String key, boolean defaultVal) {
         String val = get(key);
-        if (!Strings.isNullOrEmpty(val)) {
-            return Boolean.parseBoolean(val);
-        }
-        return defaultVal;
+        return Strings.isNullOrEmpty(val) ? defaultVal : Boolean.parseBoolean(val);
     }
 
     public double getDouble(String key) {
@@ -98,14 +118,9 @@ public class Properties {
     }
 
     public double getDouble(String key, double defaultVal) {
-        String val = get(key);
-        if (!Strings.isNullOrEmpty(val)) {
-            try {
-                return Double.parseDouble(val);
-            } catch (NumberFormatException ignored) {
-            }
-        }
-        return defaultVal;
+        TypedValue v = typed(key);
+        Double d = v == null ? null : v.asDouble();
+        return d != null ? d : defaultVal;
     }
 
     public String get(String key, String defaultVal) {
@@ -130,4 +145,45 @@ public class Properties {
     public Map<String, String> getAll() {
         return m;
     }
+
+    /**
+     * 一个配置值按数值类型解析后的结果,按请求的类型首次读取时才解析并缓存,解析失败也缓存;
+     * 并发解析结果相同,不需要加锁
+     */
+    private static final class TypedValue {
+        private static final Object INVALID = new Object();
+        private final String raw;
+        private volatile Object longVal;
+        private volatile Object doubleVal;
+
+        TypedValue(String raw) {
+            this.raw = raw;
+        }
+
+        Long asLong() {
+            Object v = longVal;
+            if (v == null) {
+                try {
+                    v = Long.parseLong(raw);
+                } catch (NumberFormatException e) {
+                    v = INVALID;
+                }
+                longVal = v;
+            }
+            return v == INVALID ? null : (Long) v;
+        }
+
+        Double asDouble() {
+            Object v = doubleVal;
+            if (v == null) {
+                try {
+                    v = Double.parseDouble(raw);
+                } catch (NumberFormatException e) {
+                    v = INVALID;
+                }
+                doubleVal = v;
+            }
+            return v == INVALID ? null : (Double) v;
+        }
+    }
 }
@@ -0,0 +1,163 @@
+package com.ijson.config.helper;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 从配置中心获取zookeeper连接信息,并在本地保留最近1次成功的结果
+ * <p>
+ * 有本地副本时带上 If-None-Match/If-Modified-Since 重新验证,服务端返回304直接使用副本;
+ * 超时或者请求失败时立即回退到本地副本,不让启动速度依赖配置中心
+ * <pre>
+ * 副本格式: url=...\netag=...\nlastModified=...\n\n内容
+ * </pre>
+ *
+ * @author *
+ */
+class BootstrapFetcher {
+
+    public static final Logger log = LoggerFactory.getLogger(BootstrapFetcher.class);
+
+    private static final byte[] SEPARATOR = {'\n', '\n'};
+
+    private final Path cacheFile;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    BootstrapFetcher(Path cacheFile, int connectTimeout, int readTimeout) {
+        this.cacheFile = cacheFile;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * 获取配置内容
+     *
+     * @param url 配置中心地址
+     * @return 配置内容,请求失败且没有本地副本时返回null
+     */
+    byte[] fetch(String url) {
+        Cached cached = readCache(url);
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            if (cached != null) {
+                if (!Strings.isNullOrEmpty(cached.etag)) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (!Strings.isNullOrEmpty(cached.lastModified)) {
+                    connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                log.info("bootstrap settings not modified, url={}", url);
+                return cached.content;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("unexpected status " + code);
+            }
+            byte[] content;
+            try (InputStream in = connection.getInputStream()) {
+                content = ByteStreams.toByteArray(in);
+            }
+            writeCache(url, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), content);
+            return content;
+        } catch (IOException e) {
+            if (cached != null) {
+                log.warn("cannot load from url={}, use local copy {}  {}", url, cacheFile, e.toString());
+                return cached.content;
+            }
+            log.error("cannot load from url={}  {}", url, e);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private Cached readCache(String url) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(cacheFile);
+            int pos = Bytes.indexOf(bytes, SEPARATOR);
+            if (pos < 0) {
+                return null;
+            }
+            Cached c = new Cached(Arrays.copyOfRange(bytes, pos + SEPARATOR.length, bytes.length));
+            String cachedUrl = null;
+            for (String line : new String(bytes, 0, pos, UTF8).split("\n")) {
+                int eq = line.indexOf('=');
+                if (eq < 0) {
+                    continue;
+                }
+                String key = line.substring(0, eq);
+                String val = line.substring(eq + 1);
+                if ("url".equals(key)) {
+                    cachedUrl = val;
+                } else if ("etag".equals(key)) {
+                    c.etag = val;
+                } else if ("lastModified".equals(key)) {
+                    c.lastModified = val;
+                }
+            }
+            // profile等参数变化后,旧副本不能再用
+            return url.equals(cachedUrl) ? c : null;
+        } catch (IOException e) {
+            log.error("cannot read {}  {}", cacheFile, e);
+            return null;
+        }
+    }
+
+    private void writeCache(String url, String etag, String lastModified, byte[] content) {
+        Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(content.length + 256)) {
+            StringBuilder sbd = new StringBuilder();
+            sbd.append("url=").append(url).append('\n');
+            if (etag != null) {
+                sbd.append("etag=").append(etag).append('\n');
+            }
+            if (lastModified != null) {
+                sbd.append("lastModified=").append(lastModified).append('\n');
+            }
+            out.write(sbd.toString().getBytes(UTF8));
+            out.write('\n');
+            out.write(content);
+            Files.createDirectories(cacheFile.getParent());
+            Files.write(tmp, out.toByteArray());
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("cannot write {}  {}", cacheFile, e);
+        }
+    }
+
+    private static class Cached {
+        private final byte[] content;
+        private String etag;
+        private String lastModified;
+
+        Cached(byte[] content) {
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.ImmutableList;
+import com.ijson.config.base.ContentDigest;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 超过单个节点大小限制的配置分片存储
+ * <p>
+ * 配置节点只保存清单,内容(按 {@link PayloadCodec} 压缩后)切分到子节点 chunk-版本-序号 中;
+ * 写入时先写完全部分片再按版本号条件替换清单,最后删除旧版本的分片,读取方只在清单指向的分片全部到齐且摘要一致时才使用
+ * <pre>
+ * 清单格式: magic(4) format(2) generation(8) count(4) chunkSize(4) totalLength(4) digest(8)
+ * </pre>
+ *
+ * @author *
+ */
+public class ChunkedPayload {
+
+    public static final Logger log = LoggerFactory.getLogger(ChunkedPayload.class);
+
+    public static final String CHUNK_PREFIX = "chunk-";
+    /**
+     * 单个分片大小,低于zookeeper默认1M的节点上限
+     */
+    public static final int CHUNK_SIZE = 512 * 1024;
+
+    private static final int MAGIC = 0xC0F16C4B;
+    private static final short FORMAT = 1;
+    private static final int MANIFEST_LENGTH = 34;
+
+    private final long generation;
+    private final int count;
+    private final int chunkSize;
+    private final int totalLength;
+    private final long digest;
+
+    private ChunkedPayload(long generation, int count, int chunkSize, int totalLength, long digest) {
+        this.generation = generation;
+        this.count = count;
+        this.chunkSize = chunkSize;
+        this.totalLength = totalLength;
+        this.digest = digest;
+    }
+
+    public static boolean isManifest(byte[] data) {
+        return data != null && data.length == MANIFEST_LENGTH && ByteBuffer.wrap(data).getInt() == MAGIC;
+    }
+
+    /**
+     * 解析清单
+     *
+     * @param data 配置节点内容
+     * @return 不是清单时返回null
+     */
+    public static ChunkedPayload parse(byte[] data) {
+        if (!isManifest(data)) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.getInt();
+        if (buf.getShort() != FORMAT) {
+            return null;
+        }
+        return new ChunkedPayload(buf.getLong(), buf.getInt(), buf.getInt(), buf.getInt(), buf.getLong());
+    }
+
+    public static boolean isChunk(String child) {
+        return child.startsWith(CHUNK_PREFIX);
+    }
+
+    /**
+     * 去掉分片子节点,剩下的才是profile
+     *
+     * @param children 子节点
+     * @return 子节点为null时返回null
+     */
+    public static List<String> withoutChunks(List<String> children) {
+        if (children == null || children.stream().noneMatch(ChunkedPayload::isChunk)) {
+            return children;
+        }
+        return children.stream().filter(i -> !isChunk(i)).collect(Collectors.toList());
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 按分片大小切分编码后的内容,生成清单
+     *
+     * @param data       编码后的内容
+     * @param generation 版本号
+     * @param chunkSize  分片大小
+     * @return 清单
+     */
+    static ChunkedPayload of(byte[] data, long generation, int chunkSize) {
+        int count = (data.length + chunkSize - 1) / chunkSize;
+        return new ChunkedPayload(generation, count, chunkSize, data.length, ContentDigest.of(data));
+    }
+
+    String chunkName(int index) {
+        return CHUNK_PREFIX + generation + '-' + index;
+    }
+
+    /**
+     * 第index个分片的内容
+     */
+    byte[] chunk(byte[] data, int index) {
+        int from = index * chunkSize;
+        return Arrays.copyOfRange(data, from, Math.min(from + chunkSize, totalLength));
+    }
+
+    /**
+     * 把读到的分片放到拼接数组中的位置
+     *
+     * @return 分片长度和清单不一致时返回false
+     */
+    boolean put(byte[] buf, int index, byte[] chunk) {
+        int offset = index * chunkSize;
+        int length = Math.min(chunkSize, totalLength - offset);
+        if (chunk == null || chunk.length != length) {
+            return false;
+        }
+        System.arraycopy(chunk, 0, buf, offset, length);
+        return true;
+    }
+
+    /**
+     * 校验拼接好的内容并解压
+     *
+     * @throws IOException 摘要不一致
+     */
+    byte[] assemble(byte[] buf) throws IOException {
+        if (buf.length != totalLength || ContentDigest.of(buf) != digest) {
+            throw new IOException("digest mismatch, generation " + generation);
+        }
+        return PayloadCodec.decode(buf);
+    }
+
+    byte[] toBytes() {
+        return ByteBuffer.allocate(MANIFEST_LENGTH).putInt(MAGIC).putShort(FORMAT).putLong(generation).putInt(count)
+                .putInt(chunkSize).putInt(totalLength).putLong(digest).array();
+    }
+
+    /**
+     * 同时发出全部分片的读取请求,拼接到1个数组中,校验摘要后解压
+     *
+     * @param client zookeeper客户端
+     * @param path   清单所在节点
+     * @return 分片缺失、长度或摘要不一致时异常结束
+     */
+    public CompletableFuture<byte[]> fetch(CuratorFramework client, String path) {
+        CompletableFuture<byte[]> done = new CompletableFuture<>();
+        if (count == 0) {
+            done.complete(new byte[0]);
+            return done;
+        }
+        byte[] buf = new byte[totalLength];
+        AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count && !done.isDone(); i++) {
+            int index = i;
+            String p = ZKPaths.makePath(path, chunkName(i));
+            try {
+                client.getData().inBackground((c, event) -> {
+                    if (event.getResultCode() != KeeperException.Code.OK.intValue()
+                            || !put(buf, index, event.getData())) {
+                        done.completeExceptionally(new IOException("chunk incomplete: " + p));
+                        return;
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        complete(done, buf, path);
+                    }
+                }).forPath(p);
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        }
+        return done;
+    }
+
+    private void complete(CompletableFuture<byte[]> done, byte[] buf, String path) {
+        try {
+            done.complete(assemble(buf));
+        } catch (IOException e) {
+            done.completeExceptionally(new IOException(e.getMessage() + ", path " + path));
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 写入配置,压缩后不超过 {@link #CHUNK_SIZE} 时直接写入节点,否则分片写入
+     *
+     * @param client  zookeeper客户端
+     * @param path    配置节点
+     * @param payload 配置内容
+     * @throws Exception 写入失败,清单没有替换时读取方仍然使用旧版本
+     */
+    public static void write(CuratorFramework client, String path, byte[] payload) throws Exception {
+        byte[] data = PayloadCodec.encode(payload);
+        Stat stat = client.checkExists().forPath(path);
+        if (data.length <= CHUNK_SIZE) {
+            if (stat == null) {
+                client.create().creatingParentsIfNeeded().forPath(path, data);
+            } else {
+                client.setData().forPath(path, data);
+            }
+            deleteChunks(client, path, Long.MAX_VALUE);
+            return;
+        }
+        ChunkedPayload prev = null;
+        if (stat != null) {
+            // 读取清单的同时取得版本号,替换清单时以此为条件
+            stat = new Stat();
+            prev = parse(client.getData().storingStatIn(stat).forPath(path));
+        }
+        ChunkedPayload manifest = of(data, nextGeneration(prev), CHUNK_SIZE);
+        int count = manifest.count;
+        // 上次写入失败可能留下同版本的分片
+        deleteGeneration(client, path, manifest.generation);
+        try {
+            for (int i = 0; i < count; i++) {
+                client.create().creatingParentsIfNeeded()
+                        .forPath(ZKPaths.makePath(path, manifest.chunkName(i)), manifest.chunk(data, i));
+            }
+            // 同时有别的写入方替换了清单时失败,不覆盖对方的版本
+            if (stat == null) {
+                client.create().creatingParentsIfNeeded().forPath(path, manifest.toBytes());
+            } else {
+                client.setData().withVersion(stat.getVersion()).forPath(path, manifest.toBytes());
+            }
+        } catch (Exception e) {
+            deleteGeneration(client, path, manifest.generation);
+            throw e;
+        }
+        log.info("write {} bytes to {} in {} chunks, generation {}", data.length, path, count, manifest.generation);
+        deleteChunks(client, path, manifest.generation);
+    }
+
+    /**
+     * 新版本号,高位是毫秒时间,低位随机,并发的写入方不会选中同一版本而删除或覆盖对方的分片
+     */
+    private static long nextGeneration(ChunkedPayload prev) {
+        long generation = System.currentTimeMillis() << 16 | ThreadLocalRandom.current().nextInt(1 << 16);
+        return prev == null ? generation : Math.max(generation, prev.generation + 1);
+    }
+
+    /**
+     * 删除指定版本的分片,失败时不影响写入结果
+     */
+    private static void deleteGeneration(CuratorFramework client, String path, long generation) {
+        String prefix = CHUNK_PREFIX + generation + '-';
+        try {
+            for (String i : client.getChildren().forPath(path)) {
+                if (i.startsWith(prefix)) {
+                    try {
+                        client.delete().forPath(ZKPaths.makePath(path, i));
+                    } catch (KeeperException.NoNodeException ignored) {
+                    }
+                }
+            }
+        } catch (KeeperException.NoNodeException ignored) {
+        } catch (Exception e) {
+            log.warn("cannot delete chunks of {}, generation {}  {}", path, generation, e.toString());
+        }
+    }
+
+    /**
+     * 分片节点名中的版本号,无法识别时按最旧处理
+     */
+    static long generationOf(String chunk) {
+        int end = chunk.indexOf('-', CHUNK_PREFIX.length());
+        try {
+            return Long.parseLong(chunk.substring(CHUNK_PREFIX.length(), end < 0 ? chunk.length() : end));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 删除比指定版本旧的分片,更新的版本可能是别的写入方正在写的
+     */
+    private static void deleteChunks(CuratorFramework client, String path, long keep) throws Exception {
+        List<String> children;
+        try {
+            children = client.getChildren().forPath(path);
+        } catch (KeeperException.NoNodeException e) {
+            children = ImmutableList.of();
+        }
+        for (String i : children) {
+            if (isChunk(i) && generationOf(i) < keep) {
+                try {
+                    client.delete().forPath(ZKPaths.makePath(path, i));
+                } catch (KeeperException.NoNodeException ignored) {
+                }
+            }
+        }
+    }
+}
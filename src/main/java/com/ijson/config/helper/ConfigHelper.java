@@ -17,19 +17,28 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.ijson.config.base.ConfigConstants.*;
 
@@ -75,7 +84,57 @@ public class ConfigHelper {
         }
     }
 
+    /**
+     * 依次尝试 环境变量HOSTNAME、/etc/hostname、本地缓存、带超时的InetAddress.getLocalHost()、网卡地址,
+     * DNS有问题时getLocalHost可能要好几秒,不能阻塞启动
+     */
     private static String getHostNameForLinux() {
+        String host = System.getenv(HOSTNAME);
+        if (!Strings.isNullOrEmpty(host)) {
+            return host;
+        }
+        host = readFirstLine(Paths.get(ETC_HOSTNAME));
+        if (!Strings.isNullOrEmpty(host)) {
+            return host;
+        }
+        Path cache = getConfigPath().resolve(HOST_CACHE);
+        host = readFirstLine(cache);
+        if (!Strings.isNullOrEmpty(host)) {
+            // 先用上次的结果,后台再确认1次;不占用EXECUTOR,识别端口可能让它阻塞很久
+            HostHolder.EXECUTOR.execute(() -> resolveHostName(cache));
+            return host;
+        }
+        return resolveHostName(cache);
+    }
+
+    private static String resolveHostName(Path cache) {
+        long timeout = getApplicationConfig().getLong(HOST_TIMEOUT, 2000L);
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(ConfigHelper::getLocalHostName, HostHolder.EXECUTOR);
+        String host;
+        try {
+            host = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("resolve local host timeout after {}ms, use interface address", timeout);
+            host = null;
+        } catch (Exception e) {
+            host = null;
+        }
+        if (host == null) {
+            // getLocalHost超时、失败或者没有结果,都退回到网卡地址;网卡地址不写缓存,下次启动仍然先尝试解析主机名
+            host = getInterfaceAddress();
+            return host != null ? host : UNKNOWN_HOST;
+        }
+        try {
+            Path tmp = cache.resolveSibling(HOST_CACHE + ".tmp");
+            Files.write(tmp, host.getBytes(UTF8));
+            Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("cannot write {}  {}", cache, e.toString());
+        }
+        return host;
+    }
+
+    private static String getLocalHostName() {
         try {
             return (InetAddress.getLocalHost()).getHostName();
         } catch (UnknownHostException uhe) {
@@ -89,10 +148,47 @@ public class ConfigHelper {
                     return host.substring(0, colon);
                 }
             }
-            return UNKNOWN_HOST;
+            return null;
         }
     }
 
+    /**
+     * 第1个非回环的IPv4网卡地址
+     */
+    private static String getInterfaceAddress() {
+        try {
+            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+            while (interfaces != null && interfaces.hasMoreElements()) {
+                NetworkInterface ni = interfaces.nextElement();
+                if (!ni.isUp() || ni.isLoopback() || ni.isVirtual()) {
+                    continue;
+                }
+                Enumeration<InetAddress> addresses = ni.getInetAddresses();
+                while (addresses.hasMoreElements()) {
+                    InetAddress address = addresses.nextElement();
+                    if (address instanceof Inet4Address && !address.isLoopbackAddress()) {
+                        return address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            log.error("cannot enumerate network interfaces  {}", e.toString());
+        }
+        return null;
+    }
+
+    private static String readFirstLine(Path path) {
+        try {
+            if (Files.isReadable(path)) {
+                List<String> lines = Files.readAllLines(path, UTF8);
+                return lines.isEmpty() ? null : lines.get(0).trim();
+            }
+        } catch (IOException e) {
+            log.warn("cannot read {}  {}", path, e.toString());
+        }
+        return null;
+    }
+
     public static ProcessInfo getProcessInfo() {
         return LazyHolder4.PROCESS_INFO;
     }
@@ -146,7 +242,7 @@ public class ConfigHelper {
      * @return 找到返回路径否则返回null
      */
     private static String scanResource(String resource) {
-        try {
+        try (StartupReport.Timer ignored = StartupReport.start("scanResource")) {
             Enumeration<URL> ps = Thread.currentThread().getContextClassLoader().getResources(resource);
             while (ps.hasMoreElements()) {
                 URL url = ps.nextElement();
@@ -236,16 +332,25 @@ public class ConfigHelper {
         ProcessInfo info = new ProcessInfo();
         info.setName(config.get(PROCESS_PROFILE));
         info.setProfile(config.get(PROCESS_PROFILE));
-        info.setIp(config.get(PROCESS_IP, getServerInnerIp()));
+        String ip = config.get(PROCESS_IP);
+        info.setIp(ip != null ? ip : getServerInnerIp());
         String s = get(config, PROCESS_PORT, null);
         if (Strings.isNullOrEmpty(s)) {
-            try {
-                Integer port = WebServer.getHttpPort();
-                if (port != null) {
-                    info.setPort(port.toString());
+            // 容器端口可能要等connector注册后才能识别,放到后台避免阻塞配置加载
+            Runnable done = StartupReport.getInstance().await("portDiscovery");
+            EXECUTOR.execute(() -> {
+                try (StartupReport.Timer ignored = StartupReport.start("portDiscovery")) {
+                    Integer port = WebServer.getHttpPort();
+                    if (port != null) {
+                        log.info("process.port = {}", port);
+                        info.resolvePort(port.toString());
+                    }
+                } catch (Exception e) {
+                    log.warn("cannot detect http port  {}", e.toString());
+                } finally {
+                    done.run();
                 }
-            } catch (Exception ignored) {
-            }
+            });
         } else {
             info.setPort(s);
         }
@@ -271,18 +376,30 @@ public class ConfigHelper {
             builder.authorization(scheme, newBytes(password));
         }
         CuratorFramework client = builder.build();
+        long start = System.nanoTime();
+        AtomicBoolean connected = new AtomicBoolean(false);
+        client.getConnectionStateListenable().addListener((c, state) -> {
+            if (state.isConnected() && connected.compareAndSet(false, true)) {
+                StartupReport.getInstance().record("zookeeperConnect", System.nanoTime() - start);
+            }
+        });
         client.start();
         return client;
     }
 
 
+    private static class HostHolder {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-host-%d").build());
+    }
+
     private static class LazyHolder2 {
-        private static final Path CONFIG_PATH = scanConfigPath();
+        private static final Path CONFIG_PATH = StartupReport.time("scanConfigPath", ConfigHelper::scanConfigPath);
     }
 
 
     private static class LazyHolder3 {
-        private static final Config CONFIG = scanApplicationConfig();
+        private static final Config CONFIG = StartupReport.time("scanApplicationConfig", ConfigHelper::scanApplicationConfig);
     }
 
     private static byte[] newBytes(String s) {
@@ -293,6 +410,6 @@ public class ConfigHelper {
     }
 
     private static class LazyHolder4 {
-        private static final ProcessInfo PROCESS_INFO = scanProcessInfo();
+        private static final ProcessInfo PROCESS_INFO = StartupReport.time("scanProcessInfo", ConfigHelper::scanProcessInfo);
     }
 }
@@ -0,0 +1,181 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author *
+ * 在内存中维护 zk.basePath 下整棵配置树,所有RemoteConfig共用,
+ * 配置读取和变更通知都走缓存,不再各自向zookeeper注册watcher和发起请求
+ * <pre>
+ * basePath/配置名/profile
+ * </pre>
+ */
+public class ConfigTreeCache implements TreeCacheListener, AutoCloseable {
+
+    public static final Logger log = LoggerFactory.getLogger(ConfigTreeCache.class);
+
+    private final String basePath;
+    private final TreeCache cache;
+    private final CountDownLatch initialized = new CountDownLatch(1);
+    /**
+     * 配置路径到变更回调
+     */
+    private final ConcurrentMap<String, Set<Runnable>> listeners = Maps.newConcurrentMap();
+
+    public ConfigTreeCache(CuratorFramework client, String basePath) {
+        this.basePath = ZKPaths.makePath(basePath, "");
+        this.cache = TreeCache.newBuilder(client, this.basePath)
+                .setCacheData(true)
+                .setMaxDepth(2)
+                .setExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-tree-cache-%d").build())
+                .build();
+        this.cache.getListenable().addListener(this);
+    }
+
+    public ConfigTreeCache start() {
+        try {
+            cache.start();
+            log.info("start tree cache, path:{}", basePath);
+        } catch (Exception e) {
+            log.error("cannot start tree cache, path:{}  {}", basePath, e);
+        }
+        return this;
+    }
+
+    /**
+     * 等待首次全量同步完成
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 同步完成返回true
+     */
+    public boolean awaitInitialized(long timeout, TimeUnit unit) {
+        try {
+            return initialized.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isInitialized() {
+        return initialized.getCount() == 0;
+    }
+
+    /**
+     * 注册配置路径的变更回调,配置节点或其子节点增删改都会触发
+     *
+     * @param path     配置路径,basePath/配置名
+     * @param listener 回调
+     */
+    public void register(String path, Runnable listener) {
+        listeners.computeIfAbsent(ZKPaths.makePath(path, ""), k -> Sets.newConcurrentHashSet()).add(listener);
+    }
+
+    public void unregister(String path, Runnable listener) {
+        Set<Runnable> found = listeners.get(ZKPaths.makePath(path, ""));
+        if (found != null) {
+            found.remove(listener);
+        }
+    }
+
+    /**
+     * 获取缓存中的子节点
+     *
+     * @param path 节点路径
+     * @return 节点不存在时返回null
+     */
+    public Map<String, ChildData> getChildren(String path) {
+        return cache.getCurrentChildren(path);
+    }
+
+    /**
+     * 获取缓存中的节点
+     *
+     * @param path 节点路径
+     * @return 节点不存在时返回null
+     */
+    public ChildData getData(String path) {
+        return cache.getCurrentData(path);
+    }
+
+    @Override
+    public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+        TreeCacheEvent.Type t = event.getType();
+        switch (t) {
+            case INITIALIZED:
+                log.info("tree cache initialized, path:{}", basePath);
+                initialized.countDown();
+                // 初始化之前注册的配置可能读到的是空数据,全部刷新1次
+                for (Set<Runnable> i : listeners.values()) {
+                    fire(i);
+                }
+                break;
+            case NODE_ADDED:
+            case NODE_UPDATED:
+            case NODE_REMOVED:
+                // 初始化期间的全量事件不需要分发,初始化完成后统一刷新
+                if (isInitialized() && event.getData() != null) {
+                    String p = configPath(event.getData().getPath());
+                    log.info("event: {}, path: {}", t, event.getData().getPath());
+                    if (p != null) {
+                        fire(listeners.get(p));
+                    }
+                }
+                break;
+            default:
+                log.warn("skip {}, {}", t, basePath);
+        }
+    }
+
+    private void fire(Set<Runnable> found) {
+        if (found == null) {
+            return;
+        }
+        for (Runnable i : found) {
+            try {
+                i.run();
+            } catch (Exception e) {
+                log.error("cannot notify {}  {}", i, e);
+            }
+        }
+    }
+
+    /**
+     * 根据节点路径找到所属的配置路径
+     *
+     * @param path 节点路径,basePath/配置名 或 basePath/配置名/profile
+     * @return basePath/配置名, basePath本身返回null
+     */
+    private String configPath(String path) {
+        String prefix = basePath.endsWith("/") ? basePath : basePath + '/';
+        if (path == null || path.length() <= prefix.length() || !path.startsWith(prefix)) {
+            return null;
+        }
+        int start = prefix.length();
+        int end = path.indexOf('/', start);
+        String name = end < 0 ? path.substring(start) : path.substring(start, end);
+        return ZKPaths.makePath(basePath, name);
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
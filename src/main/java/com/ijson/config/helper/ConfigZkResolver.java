@@ -10,11 +10,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -52,35 +48,15 @@ public class ConfigZkResolver extends ConfigurableZkResolver {
     }
 
     private void fetchContent(String cmsUrl, ByteArrayOutputStream out) {
-        HttpURLConnection connection = null;
-        try {
-            URL url = new URL(cmsUrl);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(3000);
-            connection.setReadTimeout(5000);
-            connection.connect();
+        Path cache = ConfigHelper.getConfigPath().resolve(BOOTSTRAP_CACHE);
+        byte[] content = new BootstrapFetcher(cache, 3000, 5000).fetch(cmsUrl);
+        log.info("load zookeeper settings from {}", cmsUrl);
+        if (content != null) {
             out.write('\n');
-
-            try (InputStream in = connection.getInputStream()) {
-                int ch = in.read();
-                while (ch != -1) {
-                    out.write(ch);
-                    ch = in.read();
-                }
-            }
-        } catch (MalformedURLException e) {
-            log.error("cannot parse url={}  {}", cmsUrl, e);
-        } catch (IOException e) {
-            log.error("cannot load from url={}  {}", cmsUrl, e);
-        } finally {
-            log.info("load zookeeper settings from {}", cmsUrl);
-            if (connection != null) {
-                connection.disconnect();
-            }
+            out.write(content, 0, content.length);
         }
     }
 
-
 }
 
 class ConfigurableZkResolver implements IZkResolver {
@@ -2,9 +2,14 @@ package com.ijson.config.helper;
 
 import javax.management.*;
 import javax.management.openmbean.CompositeData;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.parseLong;
@@ -162,6 +167,23 @@ public class JmxHelper {
                 .substring(dot + 1));
     }
 
+    /**
+     * Query several attributes of one mbean in a single call. Attributes that
+     * do not exist on the mbean are left out of the result.
+     *
+     * @param objectName The name of the mbean to query.
+     * @param attributes The attributes to query on that mbean.
+     * @return Attribute name to value.
+     * @throws Exception When there was a problem querying.
+     */
+    static Map<String, Object> queryAttributes(final ObjectName objectName, final String... attributes) throws Exception {
+        final Map<String, Object> values = new HashMap<>();
+        for (Attribute attribute : findBeanServer(objectName).getAttributes(objectName, attributes).asList()) {
+            values.put(attribute.getName(), attribute.getValue());
+        }
+        return values;
+    }
+
     private static Object resolveFields(final CompositeData attribute, final String field) {
         final int dot = field.indexOf('.');
         if (dot < 0) {
@@ -194,6 +216,63 @@ public class JmxHelper {
         return names;
     }
 
+    /**
+     * Find a list of object names, waiting for a matching mbean to be
+     * registered if there is none yet. Waiting is driven by the registration
+     * notifications of the mbean servers instead of polling.
+     *
+     * @param query   The wildcarded object name to list.
+     * @param timeout The maximum time to wait.
+     * @param unit    The time unit of the timeout.
+     * @return A list of matching object names, empty when none was registered in time.
+     * @throws MalformedObjectNameException When the query could not be parsed.
+     * @throws InterruptedException         When interrupted while waiting.
+     */
+    static Set<ObjectName> awaitNames(final String query, final long timeout, final TimeUnit unit)
+            throws MalformedObjectNameException, InterruptedException {
+        Set<ObjectName> names = queryNames(query);
+        if (!names.isEmpty()) {
+            return names;
+        }
+        final ObjectName pattern = new ObjectName(query);
+        final CountDownLatch registered = new CountDownLatch(1);
+        final NotificationListener listener = (notification, handback) -> {
+            if (pattern.apply(((MBeanServerNotification) notification).getMBeanName())) {
+                registered.countDown();
+            }
+        };
+        final NotificationFilterSupport filter = new NotificationFilterSupport();
+        filter.enableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+
+        final Set<MBeanServer> servers = new LinkedHashSet<>(MBeanServerFactory.findMBeanServer(null));
+        servers.add(getPlatformMBeanServer());
+        final Set<MBeanServer> subscribed = new HashSet<>();
+        try {
+            for (MBeanServer server : servers) {
+                try {
+                    server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+                    subscribed.add(server);
+                } catch (InstanceNotFoundException e) {
+                    // no delegate, cannot be notified by this server
+                }
+            }
+            // registered between the first query and the subscription
+            names = queryNames(query);
+            if (names.isEmpty() && registered.await(timeout, unit)) {
+                names = queryNames(query);
+            }
+            return names;
+        } finally {
+            for (MBeanServer server : subscribed) {
+                try {
+                    server.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+                } catch (Exception e) {
+                    // ignore, this was just to clean up
+                }
+            }
+        }
+    }
+
     /**
      * Unregister an MBean, suppressing all errors that may arise. Good for
      * making sure a bean really is not there. We assume that the registered
@@ -0,0 +1,103 @@
+package com.ijson.config.helper;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_COMPRESS_THRESHOLD;
+
+/**
+ * zookeeper节点内容的压缩和解压
+ * <p>
+ * 超过 zk.compress.threshold 字节的内容写成gzip格式,以gzip头 0x1f 0x8b 识别;
+ * 文本配置不会以这两个字节开头,没有压缩的旧节点照常读取,以这两个字节开头但解压失败的内容也按原样返回;
+ * 默认不压缩,旧版本客户端读不了压缩内容,所有读取方升级后再开启
+ *
+ * @author *
+ */
+public class PayloadCodec {
+
+    public static final Logger log = LoggerFactory.getLogger(PayloadCodec.class);
+
+    private static final int MAGIC1 = 0x1f;
+    private static final int MAGIC2 = 0x8b;
+    /**
+     * gzip头10字节加尾部8字节
+     */
+    private static final int MIN_LENGTH = 18;
+    /**
+     * 尾部记录的原始长度超过这个值时不预先分配
+     */
+    private static final int MAX_PREALLOCATE = 64 * 1024 * 1024;
+
+    private PayloadCodec() {
+    }
+
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length >= MIN_LENGTH && (data[0] & 0xff) == MAGIC1 && (data[1] & 0xff) == MAGIC2;
+    }
+
+    /**
+     * 超过阈值时压缩,压缩后没有变小则保持原样;阈值小于0时不压缩
+     *
+     * @param payload 原始内容
+     * @return 写入zookeeper的内容
+     */
+    public static byte[] encode(byte[] payload) {
+        if (payload == null || Holder.THRESHOLD < 0 || payload.length <= Holder.THRESHOLD || isCompressed(payload)) {
+            return payload;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] compressed = out.toByteArray();
+        return compressed.length < payload.length ? compressed : payload;
+    }
+
+    /**
+     * 按gzip尾部记录的原始长度一次分配,直接解压成配置快照使用的数组
+     *
+     * @param data zookeeper节点内容
+     * @return 原始内容,没有压缩或者解压失败时原样返回
+     */
+    public static byte[] decode(byte[] data) {
+        if (!isCompressed(data)) {
+            return data;
+        }
+        int n = data.length;
+        // gzip尾部4字节小端序的原始长度
+        int size = (data[n - 4] & 0xff) | (data[n - 3] & 0xff) << 8 | (data[n - 2] & 0xff) << 16
+                | (data[n - 1] & 0xff) << 24;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192)) {
+            if (size < 0 || size > MAX_PREALLOCATE) {
+                return ByteStreams.toByteArray(in);
+            }
+            byte[] content = new byte[size];
+            ByteStreams.readFully(in, content);
+            if (in.read() != -1) {
+                throw new IOException("size mismatch, expected " + size);
+            }
+            return content;
+        } catch (IOException e) {
+            // 不是有效的gzip,当作没有压缩的内容,避免把配置清空
+            log.warn("cannot decompress {} bytes, use as is  {}", n, e.toString());
+            return data;
+        }
+    }
+
+    private static class Holder {
+        private static final long THRESHOLD =
+                ConfigHelper.getApplicationConfig().getLong(ZOOKEEPER_COMPRESS_THRESHOLD, -1L);
+    }
+}
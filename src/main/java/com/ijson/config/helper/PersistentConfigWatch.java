@@ -0,0 +1,149 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.watch.PersistentWatcher;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author *
+ * 在 zk.basePath 上注册1个持久递归watch(需要zookeeper 3.6+),按事件路径分发给对应的配置,
+ * 不再每个配置各自注册一次性watcher,也没有事件之后重新注册的往返和间隙
+ * <pre>
+ * basePath/配置名          配置节点的创建、删除和内容变化
+ * basePath/配置名/profile  profile节点的创建、删除和内容变化
+ * </pre>
+ * 分片节点的事件不分发,分片写完之后清单节点才会变化
+ */
+public class PersistentConfigWatch implements Watcher, AutoCloseable {
+
+    public static final Logger log = LoggerFactory.getLogger(PersistentConfigWatch.class);
+
+    private static final ConcurrentMap<List<Object>, PersistentConfigWatch> WATCHES = Maps.newConcurrentMap();
+
+    private final String basePath;
+    private final PersistentWatcher watcher;
+    /**
+     * 配置路径到变更回调
+     */
+    private final ConcurrentMap<String, Set<Runnable>> listeners = Maps.newConcurrentMap();
+
+    private PersistentConfigWatch(CuratorFramework client, String basePath) {
+        this.basePath = ZKPaths.makePath(basePath, "");
+        this.watcher = new PersistentWatcher(client, this.basePath, true);
+        this.watcher.getListenable().addListener(this);
+        // 断线或者会话过期后watch重新注册,期间的事件可能丢失,全部配置检查1次
+        this.watcher.getResetListenable().addListener(this::fireAll);
+    }
+
+    /**
+     * 获取客户端和根路径对应的持久watch,第1次获取时注册
+     *
+     * @param client   zookeeper客户端
+     * @param basePath 配置根路径
+     * @return 持久watch
+     */
+    public static PersistentConfigWatch of(CuratorFramework client, String basePath) {
+        return WATCHES.computeIfAbsent(ImmutableList.of(client, ZKPaths.makePath(basePath, "")), k -> {
+            PersistentConfigWatch w = new PersistentConfigWatch(client, basePath);
+            w.watcher.start();
+            log.info("add persistent recursive watch, path:{}", w.basePath);
+            return w;
+        });
+    }
+
+    /**
+     * 注册配置路径的变更回调,配置节点或其profile节点增删改都会触发
+     *
+     * @param path     配置路径,basePath/配置名
+     * @param listener 回调
+     */
+    public void register(String path, Runnable listener) {
+        listeners.computeIfAbsent(ZKPaths.makePath(path, ""), k -> Sets.newConcurrentHashSet()).add(listener);
+    }
+
+    public void unregister(String path, Runnable listener) {
+        Set<Runnable> found = listeners.get(ZKPaths.makePath(path, ""));
+        if (found != null) {
+            found.remove(listener);
+        }
+    }
+
+    @Override
+    public void process(WatchedEvent event) {
+        Event.EventType t = event.getType();
+        String p = event.getPath();
+        switch (t) {
+            case NodeCreated:
+            case NodeDeleted:
+            case NodeDataChanged:
+                String config = configPath(p);
+                if (config != null) {
+                    log.info("event: {}, path: {}", t, p);
+                    fire(listeners.get(config));
+                }
+                break;
+            default:
+                log.debug("skip {}, {}", t, p);
+        }
+    }
+
+    private void fireAll() {
+        log.info("persistent watch reset, path:{}, check {} configs", basePath, listeners.size());
+        for (Set<Runnable> i : listeners.values()) {
+            fire(i);
+        }
+    }
+
+    private void fire(Set<Runnable> found) {
+        if (found == null) {
+            return;
+        }
+        for (Runnable i : found) {
+            try {
+                i.run();
+            } catch (Exception e) {
+                log.error("cannot notify {}  {}", i, e);
+            }
+        }
+    }
+
+    /**
+     * 根据节点路径找到所属的配置路径
+     *
+     * @param path 节点路径,basePath/配置名 或 basePath/配置名/profile
+     * @return basePath/配置名, basePath本身、分片节点以及更深的节点返回null
+     */
+    private String configPath(String path) {
+        String prefix = basePath.endsWith("/") ? basePath : basePath + '/';
+        if (path == null || path.length() <= prefix.length() || !path.startsWith(prefix)) {
+            return null;
+        }
+        int start = prefix.length();
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            return ZKPaths.makePath(basePath, path.substring(start));
+        }
+        String profile = path.substring(end + 1);
+        if (profile.indexOf('/') >= 0 || ChunkedPayload.isChunk(profile)) {
+            return null;
+        }
+        return ZKPaths.makePath(basePath, path.substring(start, end));
+    }
+
+    @Override
+    public void close() {
+        WATCHES.values().remove(this);
+        watcher.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.ijson.config.helper;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 记录本次运行中应用请求过的配置名,下次启动时据此在后台预加载
+ * <pre>
+ * 配置目录/.preload.manifest,每行1个配置名
+ * </pre>
+ *
+ * @author *
+ */
+public class PreloadManifest {
+
+    public static final Logger log = LoggerFactory.getLogger(PreloadManifest.class);
+
+    public static final String FILE_NAME = ".preload.manifest";
+    private static final long WRITE_DELAY = 5000L;
+
+    private final Path file;
+    private final Set<String> requested = Sets.newConcurrentHashSet();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public PreloadManifest(Path dir) {
+        this.file = dir.resolve(FILE_NAME);
+    }
+
+    /**
+     * 上次运行时请求过的配置名
+     *
+     * @return 配置名列表,没有记录时返回空列表
+     */
+    public List<String> load() {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        try {
+            String txt = new String(Files.readAllBytes(file), UTF8);
+            return ImmutableList.copyOf(Splitter.on('\n').trimResults().omitEmptyStrings().split(txt));
+        } catch (IOException e) {
+            log.error("cannot read {}  {}", file, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 记录请求的配置名,有新的配置名时在后台合并写入
+     *
+     * @param name 配置名
+     */
+    public void record(String name) {
+        if (!Strings.isNullOrEmpty(name) && requested.add(name) && scheduled.compareAndSet(false, true)) {
+            Holder.EXECUTOR.schedule(() -> {
+                scheduled.set(false);
+                write();
+            }, WRITE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void write() {
+        List<String> names = Lists.newArrayList(requested);
+        Collections.sort(names);
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            Files.write(tmp, String.join("\n", names).getBytes(UTF8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("write manifest {}, configs:{}", file, names.size());
+        } catch (IOException e) {
+            log.error("cannot write {}  {}", file, e);
+        }
+    }
+
+    private static class Holder {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-manifest").build());
+    }
+}
@@ -0,0 +1,325 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ijson.config.base.ChangeableConfig;
+import com.ijson.config.base.ConfigSnapshot;
+import com.ijson.config.base.ContentDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.ijson.config.base.ConfigConstants.CACHE_FILE_SIZE;
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 把本地cache目录下所有配置打包成1个文件,冷启动时只需打开1次,每个配置从文件直接读到自己的数组中,不用逐个打开小文件
+ * <pre>
+ * magic(int) format(int) count(int)
+ * count * [nameLength(short) name(utf8) version(long) digest(long) offset(long) length(int)]
+ * payload ...
+ * </pre>
+ * 启动时直接使用打包内容,不检查配置文件;配置登记后在后台按索引中的摘要核对配置文件,
+ * 停机期间配置文件有变化时按文件内容更新并通知listener。打包文件不做内存映射,读取通道在启动读取结束后关闭,
+ * 打开期间也不妨碍替换文件;
+ * 配置变化后在后台合并重写,先写临时文件再原子替换
+ *
+ * @author *
+ */
+public class SnapshotBundle {
+
+    public static final Logger log = LoggerFactory.getLogger(SnapshotBundle.class);
+
+    public static final String FILE_NAME = ".snapshot.bundle";
+    private static final int MAGIC = 0x43464742;
+    private static final int FORMAT = 1;
+    private static final long WRITE_DELAY = 1000L;
+    /**
+     * 启动后多久关闭打包文件,之后创建的配置直接读取配置文件
+     */
+    private static final long RELEASE_DELAY = 60000L;
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    /**
+     * 启动期间打开的打包文件,读完或者超时后关闭
+     */
+    private FileChannel channel;
+    /**
+     * 从打包文件读取、还没有核对配置文件的配置及其摘要
+     */
+    private final ConcurrentMap<String, Long> served = Maps.newConcurrentMap();
+    /**
+     * 需要写入打包文件的配置和对应的本地cache文件
+     */
+    private final ConcurrentMap<String, Tracked> tracked = Maps.newConcurrentMap();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    /**
+     * 打包文件中现有配置的摘要,内容没有变化时不重写
+     */
+    private volatile Map<String, Long> written = Maps.newHashMap();
+
+    public SnapshotBundle(Path dir) {
+        this.file = dir.resolve(FILE_NAME);
+        this.entries = Files.exists(file) ? load() : Maps.newConcurrentMap();
+        if (!entries.isEmpty()) {
+            Holder.EXECUTOR.schedule(this::release, RELEASE_DELAY, TimeUnit.MILLISECONDS);
+        } else {
+            release();
+        }
+    }
+
+    private Map<String, Entry> load() {
+        long start = System.currentTimeMillis();
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            // 只读取索引,不关闭通道
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                log.warn("skip unknown bundle {}", file);
+                return Maps.newConcurrentMap();
+            }
+            int count = in.readInt();
+            long size = channel.size();
+            Map<String, Entry> m = Maps.newConcurrentMap();
+            Map<String, Long> digests = Maps.newHashMap();
+            for (int i = 0; i < count; i++) {
+                byte[] b = new byte[in.readUnsignedShort()];
+                in.readFully(b);
+                String name = new String(b, UTF8);
+                in.readLong();
+                long digest = in.readLong();
+                long offset = in.readLong();
+                int length = in.readInt();
+                if (offset < 0 || length < 0 || offset + length > size) {
+                    throw new IOException("broken index, name:" + name);
+                }
+                m.put(name, new Entry(offset, length, digest));
+                digests.put(name, digest);
+            }
+            written = digests;
+            log.info("load bundle {}, configs:{}, cost {}ms", file, count, System.currentTimeMillis() - start);
+            return m;
+        } catch (IOException e) {
+            log.error("cannot load bundle {}  {}", file, e);
+            return Maps.newConcurrentMap();
+        }
+    }
+
+    /**
+     * 读取打包的配置内容,每个配置只能读取1次
+     *
+     * @param name   配置名
+     * @param source 配置对应的本地文件,登记后在后台据此核对
+     * @return 打包文件已关闭、内容损坏或不存在时返回null
+     */
+    public byte[] read(String name, File source) {
+        Entry entry = entries.remove(name);
+        if (entry == null) {
+            return null;
+        }
+        byte[] bytes = new byte[entry.length];
+        synchronized (this) {
+            if (channel == null) {
+                return null;
+            }
+            try {
+                ByteBuffer dst = ByteBuffer.wrap(bytes);
+                while (dst.hasRemaining()) {
+                    if (channel.read(dst, entry.offset + dst.position()) < 0) {
+                        throw new EOFException(file.toString());
+                    }
+                }
+            } catch (IOException e) {
+                log.error("cannot read {} from bundle {}  {}", name, file, e.toString());
+                return null;
+            } finally {
+                if (entries.isEmpty()) {
+                    release();
+                }
+            }
+        }
+        if (ContentDigest.of(bytes) != entry.digest) {
+            log.warn("digest mismatch in bundle {}, name:{}", file, name);
+            return null;
+        }
+        served.put(name, entry.digest);
+        Tracked t = tracked.get(name);
+        if (t != null && served.remove(name) != null) {
+            verifyLater(t, entry.digest);
+        }
+        return bytes;
+    }
+
+    /**
+     * 关闭打包文件,之后的读取都回退到配置文件
+     */
+    synchronized void release() {
+        entries.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("cannot close bundle {}  {}", file, e.toString());
+            }
+            channel = null;
+        }
+    }
+
+    private void verifyLater(Tracked t, long digest) {
+        Holder.EXECUTOR.execute(() -> verify(t, digest));
+    }
+
+    /**
+     * 核对配置文件和打包时的摘要,不一致说明停机期间配置文件被修改过,按文件内容更新
+     */
+    private void verify(Tracked t, long digest) {
+        try {
+            if (!t.source.exists()) {
+                return;
+            }
+            byte[] now = Files.readAllBytes(t.source.toPath());
+            if (ContentDigest.of(now) == digest || !t.config.isChanged(now)) {
+                return;
+            }
+            log.info("{} changed since bundle {} was written, reload from {}", t.config.getName(), file, t.source);
+            t.config.copyOf(now);
+            t.config.notifyListeners();
+        } catch (IOException e) {
+            log.warn("cannot verify {} against {}  {}", t.config.getName(), t.source, e.toString());
+        }
+    }
+
+    /**
+     * 跟踪配置变化,变化后在后台重写打包文件
+     *
+     * @param config 配置
+     * @param source 配置对应的本地文件
+     */
+    public void track(ChangeableConfig config, File source) {
+        Tracked t = new Tracked(config, source);
+        if (tracked.putIfAbsent(config.getName(), t) == null) {
+            config.addListener(c -> scheduleWrite(), false);
+            scheduleWrite();
+            Long digest = served.remove(config.getName());
+            if (digest != null) {
+                verifyLater(t, digest);
+            }
+        }
+    }
+
+    private void scheduleWrite() {
+        if (scheduled.compareAndSet(false, true)) {
+            Holder.EXECUTOR.schedule(() -> {
+                scheduled.set(false);
+                write();
+            }, WRITE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换,读取方要么看到旧文件要么看到完整的新文件
+     */
+    void write() {
+        Map<String, ConfigSnapshot> all = Maps.newTreeMap();
+        for (Map.Entry<String, Tracked> i : tracked.entrySet()) {
+            // 只用原始字节、版本和摘要,不触发kv解析
+            ConfigSnapshot s = i.getValue().config.getSnapshot();
+            if (s.getContent().length > CACHE_FILE_SIZE && i.getValue().source.exists()) {
+                all.put(i.getKey(), s);
+            }
+        }
+        Map<String, Long> digests = Maps.newHashMap();
+        all.forEach((k, v) -> digests.put(k, v.getDigest()));
+        if (digests.equals(written)) {
+            return;
+        }
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                Map<String, byte[]> names = Maps.newLinkedHashMap();
+                long offset = 12;
+                for (String name : all.keySet()) {
+                    byte[] b = name.getBytes(UTF8);
+                    names.put(name, b);
+                    offset += 2 + b.length + 8 + 8 + 8 + 4;
+                }
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(all.size());
+                for (Map.Entry<String, ConfigSnapshot> i : all.entrySet()) {
+                    byte[] content = i.getValue().getContent();
+                    byte[] name = names.get(i.getKey());
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeLong(i.getValue().getVersion());
+                    out.writeLong(i.getValue().getDigest());
+                    out.writeLong(offset);
+                    out.writeInt(content.length);
+                    offset += content.length;
+                }
+                for (ConfigSnapshot i : all.values()) {
+                    out.write(i.getContent());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written = digests;
+            log.info("write bundle {}, configs:{}", file, all.size());
+        } catch (IOException e) {
+            log.error("cannot write bundle {}  {}", file, e);
+        }
+    }
+
+    /**
+     * 打包文件中1个配置的位置和摘要
+     */
+    private static final class Entry {
+        private final long offset;
+        private final int length;
+        private final long digest;
+
+        Entry(long offset, int length, long digest) {
+            this.offset = offset;
+            this.length = length;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Tracked {
+        private final ChangeableConfig config;
+        private final File source;
+
+        Tracked(ChangeableConfig config, File source) {
+            this.config = config;
+            this.source = source;
+        }
+    }
+
+    private static class Holder {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-bundle").build());
+    }
+}
@@ -0,0 +1,184 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 记录启动各阶段的耗时,使用System.nanoTime计时,不受系统时钟调整影响
+ * <p>
+ * 同名阶段多次执行时累加耗时和次数,阶段之间可能嵌套(比如scanResource包含在scanConfigPath中);配置工厂创建完成时输出1次报告并注册到JMX,
+ * 后台的启动任务(比如预加载、识别端口)都结束并且有配置首次加载后再输出1次完整报告,之后的阶段继续记录,可以通过JMX查看
+ * <pre>
+ * com.ijson.config:type=StartupReport
+ * </pre>
+ *
+ * @author *
+ */
+public final class StartupReport implements StartupReportMXBean {
+
+    public static final Logger log = LoggerFactory.getLogger(StartupReport.class);
+
+    private static final String OBJECT_NAME = "com.ijson.config:type=StartupReport";
+    private static final String LOAD_PREFIX = "load:";
+    private static final StartupReport INSTANCE = new StartupReport();
+
+    private final Map<String, Phase> phases = Maps.newLinkedHashMap();
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean loaded = new AtomicBoolean(false);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    private StartupReport() {
+    }
+
+    public static StartupReport getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始计时,配合try-with-resources使用
+     *
+     * @param phase 阶段名
+     * @return 计时器,关闭时记录耗时
+     */
+    public static Timer start(String phase) {
+        return new Timer(phase, System.nanoTime());
+    }
+
+    /**
+     * 对1个阶段计时
+     *
+     * @param phase  阶段名
+     * @param action 阶段动作
+     * @param <T>    结果类型
+     * @return 阶段结果
+     */
+    public static <T> T time(String phase, Supplier<T> action) {
+        try (Timer ignored = start(phase)) {
+            return action.get();
+        }
+    }
+
+    /**
+     * 记录1次阶段耗时
+     *
+     * @param phase 阶段名
+     * @param nanos 纳秒数
+     */
+    public void record(String phase, long nanos) {
+        synchronized (phases) {
+            phases.computeIfAbsent(phase, k -> new Phase()).add(nanos);
+        }
+        if (phase.startsWith(LOAD_PREFIX) && loaded.compareAndSet(false, true)) {
+            complete();
+        }
+    }
+
+    /**
+     * 登记1个在工厂创建后才结束的后台启动任务,完整报告等它结束后再输出
+     *
+     * @param task 任务名
+     * @return 任务结束时调用,重复调用无效
+     */
+    public Runnable await(String task) {
+        pending.incrementAndGet();
+        AtomicBoolean done = new AtomicBoolean(false);
+        return () -> {
+            if (done.compareAndSet(false, true) && pending.decrementAndGet() == 0) {
+                log.debug("startup task {} finished", task);
+                complete();
+            }
+        };
+    }
+
+    /**
+     * 输出启动报告并注册到JMX,只执行1次
+     */
+    public void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        log.info("config startup report, factory created\n{}", getReport());
+        try {
+            JmxHelper.register(this, OBJECT_NAME);
+        } catch (Exception e) {
+            log.warn("cannot register {}  {}", OBJECT_NAME, e.toString());
+        }
+        complete();
+    }
+
+    /**
+     * 工厂已创建、后台启动任务都已结束、并且有配置首次加载后,输出1次完整报告
+     */
+    private void complete() {
+        if (finished.get() && loaded.get() && pending.get() == 0 && completed.compareAndSet(false, true)) {
+            log.info("config startup report, first loads finished\n{}", getReport());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> m = Maps.newLinkedHashMap();
+        synchronized (phases) {
+            phases.forEach((k, v) -> m.put(k, TimeUnit.NANOSECONDS.toMillis(v.nanos)));
+        }
+        return ImmutableMap.copyOf(m);
+    }
+
+    @Override
+    public Map<String, Integer> getPhaseCounts() {
+        Map<String, Integer> m = Maps.newLinkedHashMap();
+        synchronized (phases) {
+            phases.forEach((k, v) -> m.put(k, v.count));
+        }
+        return ImmutableMap.copyOf(m);
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder sbd = new StringBuilder();
+        synchronized (phases) {
+            for (Map.Entry<String, Phase> i : phases.entrySet()) {
+                sbd.append(String.format("%-40s %8dms %6d%n", i.getKey(),
+                        TimeUnit.NANOSECONDS.toMillis(i.getValue().nanos), i.getValue().count));
+            }
+        }
+        return sbd.toString();
+    }
+
+    private static class Phase {
+        private long nanos;
+        private int count;
+
+        void add(long nanos) {
+            this.nanos += nanos;
+            this.count++;
+        }
+    }
+
+    /**
+     * 阶段计时器
+     */
+    public static final class Timer implements AutoCloseable {
+        private final String phase;
+        private final long start;
+
+        private Timer(String phase, long start) {
+            this.phase = phase;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            INSTANCE.record(phase, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.ijson.config.helper;
+
+import java.util.Map;
+
+/**
+ * 启动各阶段耗时,通过JMX查看
+ *
+ * @author *
+ */
+public interface StartupReportMXBean {
+
+    /**
+     * 各阶段累计耗时
+     *
+     * @return 阶段名到毫秒数
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     * 各阶段执行次数
+     *
+     * @return 阶段名到次数
+     */
+    Map<String, Integer> getPhaseCounts();
+
+    /**
+     * 可读的启动报告
+     *
+     * @return 报告文本
+     */
+    String getReport();
+}
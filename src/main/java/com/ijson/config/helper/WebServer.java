@@ -4,9 +4,10 @@ package com.ijson.config.helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.management.AttributeNotFoundException;
 import javax.management.ObjectName;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.ijson.config.base.ConfigConstants.Jmx.*;
 import static com.ijson.config.base.ConfigConstants.TRIES_GET_SERVER_NAME;
@@ -14,7 +15,6 @@ import static java.lang.Integer.MAX_VALUE;
 import static java.lang.Integer.parseInt;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static java.lang.Thread.sleep;
 
 /**
  * @author *
@@ -52,31 +52,26 @@ public class WebServer {
         Collection<ObjectName> connectors = getSelectors("*:type=Connector,*");
 
         int lowest = MAX_VALUE;
+        int lowestOther = MAX_VALUE;
         for (final ObjectName connector : connectors) {
-            try {
-                String protocol = JmxHelper.queryString(connector, "protocol");
-                Integer port = JmxHelper.queryInt(connector, "port");
-                log.info("tomcat, protocol={}, port={}", protocol, port);
-                if (protocol != null && protocol.toLowerCase().contains("http")) {
-                    if (port == null) {
-                        continue;
-                    }
-                    lowest = Math.min(lowest, port);
-                }
-            } catch (AttributeNotFoundException e) {
+            Map<String, Object> values = JmxHelper.queryAttributes(connector, "protocol", "port");
+            Integer port = toInt(values.get("port"));
+            Object protocol = values.get("protocol");
+            log.info("tomcat, protocol={}, port={}", protocol, port);
+            if (port == null) {
                 // quietly skip this connector, it's probably the wrong kind
+                continue;
+            }
+            if (protocol != null && protocol.toString().toLowerCase().contains("http")) {
+                lowest = Math.min(lowest, port);
+            } else {
+                lowestOther = Math.min(lowestOther, port);
             }
         }
 
         // maybe there are no HTTP connectors?
         if (lowest == MAX_VALUE) {
-            for (final ObjectName connector : connectors) {
-                try {
-                    lowest = Math.min(lowest, JmxHelper.queryInt(connector, "port"));
-                } catch (AttributeNotFoundException e) {
-                    // quietly skip this connector, it's probably the wrong kind
-                }
-            }
+            lowest = lowestOther;
         }
 
         if (lowest == MAX_VALUE) {
@@ -90,12 +85,13 @@ public class WebServer {
         Collection<ObjectName> selectors = getSelectors("resin:type=Port,*");
         int highestHttp = -1, highestOther = -1;
         for (final ObjectName selector : selectors) {
-            final Integer port = JmxHelper.queryInt(selector, "Port");
+            Map<String, Object> values = JmxHelper.queryAttributes(selector, "Port", "ProtocolName", "Address");
+            final Integer port = toInt(values.get("Port"));
             if (port == null) {
                 continue;
             }
-            String protocol = JmxHelper.queryString(selector, "ProtocolName");
-            String address = JmxHelper.queryString(selector, "Address");
+            String protocol = values.get("ProtocolName") == null ? null : values.get("ProtocolName").toString();
+            Object address = values.get("Address");
             log.info("resin, protocol={} address={} port={}", protocol, address, port);
             if (protocol == null || !"http".equalsIgnoreCase(protocol.trim())) {
                 highestOther = max(highestOther, port);
@@ -168,18 +164,24 @@ public class WebServer {
         return lowest;
     }
 
+    /**
+     * 查找容器的connector,还没有注册时等待MBean注册通知,最多等待 TRIES_GET_SERVER_NAME 秒
+     *
+     * @param name ObjectName查询条件
+     * @return connector列表
+     * @throws Exception 超时或查询失败
+     */
     public static Collection<ObjectName> getSelectors(String name) throws Exception {
-        Collection<ObjectName> selectors;
-        for (int tries = 1; tries <= TRIES_GET_SERVER_NAME; tries++) {
-            selectors = JmxHelper.queryNames(name);
-            if (selectors.isEmpty()) {
-                sleep(1000L);
-                log.info("name:{},tries:{}", name, tries);
-            } else {
-                return selectors;
-            }
+        Collection<ObjectName> selectors = JmxHelper.awaitNames(name, TRIES_GET_SERVER_NAME, TimeUnit.SECONDS);
+        if (selectors.isEmpty()) {
+            throw new IllegalStateException(name + ", selector MBeans were not loaded after " + TRIES_GET_SERVER_NAME
+                    + " seconds, aborting");
         }
-        throw new IllegalStateException(name + ", selector MBeans were not loaded after 30 seconds, aborting");
+        return selectors;
+    }
+
+    private static Integer toInt(Object value) {
+        return value == null ? null : parseInt(value.toString());
     }
 
     /**
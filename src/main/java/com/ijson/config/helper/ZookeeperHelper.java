@@ -1,6 +1,7 @@
 package com.ijson.config.helper;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.WatchPathable;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.Watcher;
@@ -14,21 +15,31 @@ import static com.ijson.config.base.ConfigConstants.UTF8;
 
 /**
  * @author *
- * zookeeper工具类
+ * zookeeper工具类,读写节点内容时按 {@link PayloadCodec} 压缩和解压;watcher为null时不注册watcher
  */
 public class ZookeeperHelper {
 
-    private static CuratorFramework curator = null;
-
     private ZookeeperHelper() {
     }
 
+    /**
+     * 登记为默认客户端
+     *
+     * @param curator 客户端
+     * @see ZookeeperRegistry#DEFAULT
+     */
     public static void setCurator(CuratorFramework curator) {
-        ZookeeperHelper.curator = curator;
+        ZookeeperRegistry.register(ZookeeperRegistry.DEFAULT, curator);
     }
 
+    /**
+     * 默认客户端
+     *
+     * @return 没有配置zookeeper时返回null
+     * @see ZookeeperRegistry#DEFAULT
+     */
     public static CuratorFramework getCurator() {
-        return curator;
+        return ZookeeperRegistry.getIfPresent(ZookeeperRegistry.DEFAULT);
     }
 
     public static String newString(byte[] data) {
@@ -77,7 +88,8 @@ public class ZookeeperHelper {
 
     public static Stat exists(CuratorFramework client, String path, Watcher watcher) {
         try {
-            return client.checkExists().usingWatcher(watcher).forPath(path);
+            return watcher == null ? client.checkExists().forPath(path)
+                    : client.checkExists().usingWatcher(watcher).forPath(path);
         } catch (KeeperException.NoNodeException ignored) {
         } catch (Exception e) {
             throw new ZookeeperException("exists(" + path + ")", e);
@@ -95,7 +107,7 @@ public class ZookeeperHelper {
 
     public static void create(CuratorFramework client, String path, byte[] payload) {
         try {
-            client.create().creatingParentsIfNeeded().forPath(path, payload);
+            client.create().creatingParentsIfNeeded().forPath(path, PayloadCodec.encode(payload));
         } catch (Exception e) {
             throw new ZookeeperException("create(" + path + ")", e);
         }
@@ -103,7 +115,7 @@ public class ZookeeperHelper {
 
     public static void create(CuratorFramework client, String path, byte[] payload, CreateMode mode) {
         try {
-            client.create().creatingParentsIfNeeded().withMode(mode).forPath(path, payload);
+            client.create().creatingParentsIfNeeded().withMode(mode).forPath(path, PayloadCodec.encode(payload));
         } catch (Exception e) {
             throw new ZookeeperException("create(" + path + ")", e);
         }
@@ -111,7 +123,8 @@ public class ZookeeperHelper {
 
     public static void create(CuratorFramework client, String path, byte[] payload, CreateMode mode, List<ACL> aclList) {
         try {
-            client.create().creatingParentsIfNeeded().withMode(mode).withACL(aclList).forPath(path, payload);
+            client.create().creatingParentsIfNeeded().withMode(mode).withACL(aclList)
+                    .forPath(path, PayloadCodec.encode(payload));
         } catch (Exception e) {
             throw new ZookeeperException("create(" + path + ")", e);
         }
@@ -137,7 +150,7 @@ public class ZookeeperHelper {
 
     public static byte[] getData(CuratorFramework client, String path) {
         try {
-            return client.getData().forPath(path);
+            return PayloadCodec.decode(client.getData().forPath(path));
         } catch (KeeperException.NoNodeException ignored) {
         } catch (Exception e) {
             throw new ZookeeperException("getData(" + path + ")", e);
@@ -147,7 +160,19 @@ public class ZookeeperHelper {
 
     public static byte[] getData(CuratorFramework client, String path, Watcher watcher) {
         try {
-            return client.getData().usingWatcher(watcher).forPath(path);
+            return PayloadCodec.decode(watcher == null ? client.getData().forPath(path)
+                    : client.getData().usingWatcher(watcher).forPath(path));
+        } catch (KeeperException.NoNodeException ignored) {
+        } catch (Exception e) {
+            throw new ZookeeperException("getData(" + path + ")", e);
+        }
+        return null;
+    }
+
+    public static byte[] getData(CuratorFramework client, String path, Watcher watcher, Stat stat) {
+        try {
+            WatchPathable<byte[]> builder = client.getData().storingStatIn(stat);
+            return PayloadCodec.decode(watcher == null ? builder.forPath(path) : builder.usingWatcher(watcher).forPath(path));
         } catch (KeeperException.NoNodeException ignored) {
         } catch (Exception e) {
             throw new ZookeeperException("getData(" + path + ")", e);
@@ -167,7 +192,19 @@ public class ZookeeperHelper {
 
     public static List<String> getChildren(CuratorFramework client, String path, Watcher watcher) {
         try {
-            return client.getChildren().usingWatcher(watcher).forPath(path);
+            return watcher == null ? client.getChildren().forPath(path)
+                    : client.getChildren().usingWatcher(watcher).forPath(path);
+        } catch (KeeperException.NoNodeException ignored) {
+        } catch (Exception e) {
+            throw new ZookeeperException("getChildren(" + path + ")", e);
+        }
+        return null;
+    }
+
+    public static List<String> getChildren(CuratorFramework client, String path, Watcher watcher, Stat stat) {
+        try {
+            WatchPathable<List<String>> builder = client.getChildren().storingStatIn(stat);
+            return watcher == null ? builder.forPath(path) : builder.usingWatcher(watcher).forPath(path);
         } catch (KeeperException.NoNodeException ignored) {
         } catch (Exception e) {
             throw new ZookeeperException("getChildren(" + path + ")", e);
@@ -177,15 +214,28 @@ public class ZookeeperHelper {
 
     public static void setData(CuratorFramework client, String path, byte[] payload) {
         try {
-            client.setData().forPath(path, payload);
+            client.setData().forPath(path, PayloadCodec.encode(payload));
         } catch (Exception e) {
             throw new ZookeeperException("setData(" + path + ")", e);
         }
     }
 
+    /**
+     * 写入可能超过节点大小限制的配置,超过时分片存储
+     *
+     * @see ChunkedPayload#write(CuratorFramework, String, byte[])
+     */
+    public static void setChunkedData(CuratorFramework client, String path, byte[] payload) {
+        try {
+            ChunkedPayload.write(client, path, payload);
+        } catch (Exception e) {
+            throw new ZookeeperException("setChunkedData(" + path + ")", e);
+        }
+    }
+
     public static void setDataAsync(CuratorFramework client, String path, byte[] payload) {
         try {
-            client.setData().inBackground().forPath(path, payload);
+            client.setData().inBackground().forPath(path, PayloadCodec.encode(payload));
         } catch (Exception e) {
             throw new ZookeeperException("setDataAsync(" + path + ")", e);
         }
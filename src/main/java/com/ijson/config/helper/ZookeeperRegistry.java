@@ -0,0 +1,116 @@
+package com.ijson.config.helper;
+
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Maps;
+import org.apache.curator.framework.CuratorFramework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按名字登记的zookeeper客户端,比如同一个进程同时读取区域集群和全局集群的配置
+ * <p>
+ * 客户端在第1次使用时才创建和启动;连接串和认证信息相同的名字共用1个客户端,
+ * 多个租户的配置放在同一个进程里时不会成倍增加会话和线程
+ *
+ * @author *
+ */
+public class ZookeeperRegistry {
+
+    public static final Logger log = LoggerFactory.getLogger(ZookeeperRegistry.class);
+
+    /**
+     * 通过 zk.servers 等设置创建的默认客户端
+     */
+    public static final String DEFAULT = "default";
+
+    /**
+     * 名字到连接信息
+     */
+    private static final ConcurrentMap<String, String> NAMES = Maps.newConcurrentMap();
+    /**
+     * 连接信息到延迟创建的客户端,直接登记的客户端以 client:名字 为键
+     */
+    private static final ConcurrentMap<String, Supplier<CuratorFramework>> CLIENTS = Maps.newConcurrentMap();
+
+    private ZookeeperRegistry() {
+    }
+
+    public static void register(String name, String connectString) {
+        register(name, connectString, null, null);
+    }
+
+    /**
+     * 登记客户端,不会立即连接
+     *
+     * @param name          客户端名字
+     * @param connectString zookeeper连接串
+     * @param scheme        认证方式,可以为空
+     * @param password      认证信息,可以为空
+     */
+    public static void register(String name, String connectString, String scheme, String password) {
+        String key = connectString + '|' + Strings.nullToEmpty(scheme) + '|' + Strings.nullToEmpty(password);
+        CLIENTS.computeIfAbsent(key, k -> Suppliers.memoize(() -> {
+            try {
+                return ConfigHelper.newClient(connectString, scheme, password);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while creating zookeeper client " + connectString, e);
+            }
+        }));
+        bind(name, key);
+    }
+
+    /**
+     * 登记已经创建好的客户端,按名字保存,同一个名字重复登记时替换,不会累积
+     *
+     * @param name   客户端名字
+     * @param client 客户端
+     */
+    public static void register(String name, CuratorFramework client) {
+        String key = "client:" + name;
+        CLIENTS.put(key, () -> client);
+        bind(name, key);
+    }
+
+    private static void bind(String name, String key) {
+        String prev = NAMES.put(name, key);
+        if (prev != null && !prev.equals(key)) {
+            log.warn("zookeeper client '{}' rebound, the old client is kept for configs already created", name);
+        }
+    }
+
+    /**
+     * 获取客户端,第1次获取时创建并启动
+     *
+     * @param name 客户端名字
+     * @return 客户端
+     * @throws IllegalArgumentException 名字没有登记
+     */
+    public static CuratorFramework get(String name) {
+        CuratorFramework client = getIfPresent(name);
+        if (client == null) {
+            throw new IllegalArgumentException("zookeeper client '" + name + "' not registered");
+        }
+        return client;
+    }
+
+    /**
+     * 获取客户端,第1次获取时创建并启动
+     *
+     * @param name 客户端名字
+     * @return 没有登记时返回null
+     */
+    public static CuratorFramework getIfPresent(String name) {
+        String key = NAMES.get(name);
+        Supplier<CuratorFramework> supplier = key == null ? null : CLIENTS.get(key);
+        return supplier == null ? null : supplier.get();
+    }
+
+    public static boolean contains(String name) {
+        return NAMES.containsKey(name);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ijson.config.impl;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 使用同一个zookeeper客户端的RemoteConfig共用1个连接状态监听,重连后每个配置只重新同步1次
+ * <p>
+ * 重新同步时所有配置的版本检查请求同时发出,只有断线期间节点发生变化的配置才重新读取内容
+ *
+ * @author *
+ */
+public class ReconnectCoordinator implements ConnectionStateListener {
+
+    public static final Logger log = LoggerFactory.getLogger(ReconnectCoordinator.class);
+
+    private static final ConcurrentMap<CuratorFramework, ReconnectCoordinator> COORDINATORS = Maps.newConcurrentMap();
+
+    private final CuratorFramework client;
+    private final Set<RemoteConfig> configs = Sets.newConcurrentHashSet();
+    private final AtomicBoolean listening = new AtomicBoolean(false);
+
+    private ReconnectCoordinator(CuratorFramework client) {
+        this.client = client;
+    }
+
+    /**
+     * 获取客户端对应的协调器,多个工厂使用同一个客户端时共用
+     *
+     * @param client zookeeper客户端
+     * @return 协调器
+     */
+    public static ReconnectCoordinator of(CuratorFramework client) {
+        return COORDINATORS.computeIfAbsent(client, ReconnectCoordinator::new);
+    }
+
+    /**
+     * 登记配置,第1次登记时开始监听连接状态
+     *
+     * @param config 配置
+     */
+    void register(RemoteConfig config) {
+        configs.add(config);
+        if (listening.compareAndSet(false, true)) {
+            client.getConnectionStateListenable().addListener(this);
+        }
+    }
+
+    @Override
+    public void stateChanged(CuratorFramework client, ConnectionState newState) {
+        if (newState == ConnectionState.RECONNECTED) {
+            log.info("zookeeper reconnected, resync {} configs", configs.size());
+            for (RemoteConfig c : configs) {
+                try {
+                    c.resync();
+                } catch (Exception e) {
+                    log.error("cannot resync {}  {}", c.getName(), e);
+                }
+            }
+        } else if (newState == ConnectionState.CONNECTED) {
+            configs.forEach(RemoteConfig::onConnected);
+        }
+    }
+}
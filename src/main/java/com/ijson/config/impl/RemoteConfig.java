@@ -1,18 +1,47 @@
 package com.ijson.config.impl;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ijson.config.base.ChangeableConfig;
+import com.ijson.config.base.Config;
+import com.ijson.config.helper.ChunkedPayload;
+import com.ijson.config.helper.ConfigHelper;
+import com.ijson.config.helper.ConfigTreeCache;
+import com.ijson.config.helper.PayloadCodec;
+import com.ijson.config.helper.PersistentConfigWatch;
 import com.ijson.config.helper.ZookeeperHelper;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundPathable;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.Watchable;
+import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_CONNECT_TIMEOUT;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_RELOAD_QUIET;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_RELOAD_THREADS;
 import static com.ijson.config.helper.ZookeeperHelper.getCurator;
 
 /**
@@ -22,8 +51,17 @@ public class RemoteConfig extends ChangeableConfig {
 
     public static final Logger log = LoggerFactory.getLogger(RemoteConfig.class);
 
+    /**
+     * 分片不完整时的重试间隔
+     */
+    private static final long CHUNK_RETRY = 5000L;
+    /**
+     * 事件不断到达时,加载最多推迟的静默期个数
+     */
+    private static final int MAX_QUIET_ROUNDS = 10;
+
     private final String path;
-    private final List<String> paths;
+    private volatile List<String> paths;
     private final Watcher leafWatcher = new Watcher() {
         @Override
         public void process(WatchedEvent event) {
@@ -32,11 +70,11 @@ public class RemoteConfig extends ChangeableConfig {
             log.info("event: {}, path: {}", t, p);
             switch (t) {
                 case NodeDataChanged:
-                    loadFromZookeeper();
+                    requestReload();
                     break;
                 case NodeDeleted:
-                    getCurator().clearWatcherReferences(this);
-                    //loadFromZookeeper();
+                    curator().clearWatcherReferences(this);
+                    //requestReload();
                     break;
                 default:
                     log.warn("skip {}, {}", t, p);
@@ -53,27 +91,67 @@ public class RemoteConfig extends ChangeableConfig {
                 case NodeCreated:
                 case NodeDataChanged:
                 case NodeChildrenChanged:
-                    loadFromZookeeper();
+                    requestReload();
                     break;
                 case NodeDeleted:
-                    getCurator().clearWatcherReferences(this);
-                    loadFromZookeeper();
+                    curator().clearWatcherReferences(this);
+                    requestReload();
                     break;
                 default:
                     log.warn("skip {}, {}", t, p);
             }
         }
     };
+    /**
+     * 在连接超时内没有连上zookeeper,当前内容是空的或者是旧的
+     */
+    private volatile boolean stale = false;
+    /**
+     * 没有使用工厂的重连协调器时,自己监听连接状态,只注册1次
+     */
     private final ConnectionStateListener stateListener = (client1, newState) -> {
         if (newState.equals(ConnectionState.RECONNECTED)) {
-            initZookeeper();
+            resync();
+        } else if (newState.equals(ConnectionState.CONNECTED)) {
+            onConnected();
         }
     };
+    private final AtomicBoolean listening = new AtomicBoolean(false);
+    private final AtomicBoolean treeListening = new AtomicBoolean(false);
+    private volatile ReconnectCoordinator coordinator;
+    /**
+     * 上次加载时读取的节点及其版本,据此跳过没有变化的节点,重连后据此判断断线期间是否发生了变化
+     */
+    private volatile Loaded loaded = Loaded.NONE;
+    /**
+     * 已经加载的节点中最新的mzxid,以及正在读取分片的清单mzxid
+     */
+    private final Object chunkLock = new Object();
+    private long appliedMzxid = -1;
+    private long fetchingMzxid = -1;
+
+    /**
+     * 等待静默期结束的reload及其序号,每来1个事件重新计时
+     */
+    private final Object reloadLock = new Object();
+    private ScheduledFuture<?> pendingReload;
+    private long pendingSince;
+    private long reloadSeq;
+    /**
+     * 正在执行及执行期间错过的reload次数,保证同一时刻只有1个加载,错过的合并成1次
+     */
+    private final AtomicInteger reloadWip = new AtomicInteger();
+    private final long quietMillis;
+    private volatile ConfigTreeCache treeCache;
+    private volatile CuratorFramework client;
+    private volatile PersistentConfigWatch persistentWatch;
 
     public RemoteConfig(String name, String path, List<String> paths) {
         super(name);
         this.path = path;
         this.paths = paths;
+        Config app = ConfigHelper.getApplicationConfig();
+        this.quietMillis = app.getLong(ZOOKEEPER_RELOAD_QUIET + '.' + name, app.getLong(ZOOKEEPER_RELOAD_QUIET, 100L));
     }
 
     /**
@@ -81,26 +159,479 @@ public class RemoteConfig extends ChangeableConfig {
      */
     void initZookeeper() {
         try {
-            getCurator().getConnectionStateListenable().addListener(stateListener);
-            if (!getCurator().getZookeeperClient().isConnected()) {
+            stale = true;
+            // 使用配置树缓存时同样监听连接状态,连接超时的配置在连上后由 onConnected 完成加载
+            listenConnectionState();
+            if (!curator().getZookeeperClient().isConnected()) {
                 log.info("try connect zookeeper, name: {}", getName());
-                getCurator().blockUntilConnected();
+                if (!awaitConnected(curator())) {
+                    log.warn("cannot connect zookeeper in {}ms, {} is stale until connected", ConnectHolder.TIMEOUT,
+                            getName());
+                    return;
+                }
             }
-            if (ZookeeperHelper.exists(getCurator(), path, baseWatcher) != null) {
-                loadFromZookeeper();
+            if (treeCache != null) {
+                initTreeCache();
+                return;
+            }
+            if (ZookeeperHelper.exists(curator(), path, watcher(baseWatcher)) != null) {
+                reloadNow();
             }
+            stale = false;
         } catch (InterruptedException e) {
             log.error("cannot init '{}', path:{} {}", getName(), path, e);
         }
     }
 
+    /**
+     * 等待和zookeeper建立连接,最多等待 zk.connect.timeout 毫秒;
+     * 超时后直到连上之前,后续调用不再等待,避免每个配置都等1次
+     *
+     * @return 已连接返回true
+     * @throws InterruptedException 等待被中断
+     */
+    public static boolean awaitConnected() throws InterruptedException {
+        return awaitConnected(getCurator());
+    }
+
+    /**
+     * 等待指定客户端和zookeeper建立连接
+     *
+     * @param client 客户端
+     * @return 已连接返回true
+     * @throws InterruptedException 等待被中断
+     * @see #awaitConnected()
+     */
+    public static boolean awaitConnected(CuratorFramework client) throws InterruptedException {
+        if (client.getZookeeperClient().isConnected()) {
+            ConnectHolder.GAVE_UP.remove(client);
+            return true;
+        }
+        if (ConnectHolder.GAVE_UP.contains(client)) {
+            return false;
+        }
+        boolean connected = client.blockUntilConnected((int) ConnectHolder.TIMEOUT, TimeUnit.MILLISECONDS);
+        if (!connected) {
+            ConnectHolder.giveUp(client);
+        }
+        return connected;
+    }
+
+    /**
+     * 使用指定的zookeeper客户端,需要在 {@link #loadAndWatchChanges()} 之前设置,没有设置时使用默认客户端
+     *
+     * @param client 客户端
+     * @see com.ijson.config.helper.ZookeeperRegistry
+     */
+    public void setClient(CuratorFramework client) {
+        this.client = client;
+    }
+
+    private CuratorFramework curator() {
+        CuratorFramework c = client;
+        return c != null ? c : getCurator();
+    }
+
+    /**
+     * 由 zk.basePath 上的持久递归watch分发变更事件,不再注册一次性watcher,需要在 {@link #loadAndWatchChanges()} 之前设置
+     *
+     * @param persistentWatch 持久watch
+     */
+    public void setPersistentWatch(PersistentConfigWatch persistentWatch) {
+        this.persistentWatch = persistentWatch;
+    }
+
+    /**
+     * 使用持久watch时不注册一次性watcher
+     */
+    private Watcher watcher(Watcher watcher) {
+        return persistentWatch != null ? null : watcher;
+    }
+
+    private <T, B extends Watchable<BackgroundPathable<T>> & BackgroundPathable<T>> BackgroundPathable<T> watching(
+            B builder, Watcher watcher) {
+        return persistentWatch != null ? builder : builder.usingWatcher(watcher);
+    }
+
+    /**
+     * 由工厂统一监听连接状态,需要在 {@link #loadAndWatchChanges()} 之前设置
+     *
+     * @param coordinator 重连协调器
+     */
+    public void setReconnectCoordinator(ReconnectCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * 只注册1次连接状态监听和持久watch回调
+     */
+    private void listenConnectionState() {
+        if (listening.compareAndSet(false, true)) {
+            if (persistentWatch != null) {
+                persistentWatch.register(path, this::requestReload);
+            }
+            if (coordinator != null) {
+                coordinator.register(this);
+            } else {
+                curator().getConnectionStateListenable().addListener(stateListener);
+            }
+        }
+    }
+
+    /**
+     * 首次连接建立,连接超时后返回的配置在后台完成首次加载
+     */
+    void onConnected() {
+        if (stale) {
+            ReloadHolder.EXECUTOR.execute(this::initZookeeper);
+        }
+    }
+
+    /**
+     * 重连后重新挂上watcher,并对比子节点版本和已加载节点的mzxid,只有断线期间发生变化时才重新加载;
+     * 全部使用异步接口,多个配置的请求同时在途
+     */
+    void resync() {
+        if (stale) {
+            onConnected();
+            return;
+        }
+        if (treeCache != null || persistentWatch != null) {
+            // 配置树缓存和持久watch自己处理重连
+            return;
+        }
+        try {
+            watching(curator().getChildren(), baseWatcher)
+                    .inBackground((client, event) -> onResyncChildren(event))
+                    .forPath(path);
+        } catch (Exception e) {
+            log.error("cannot resync {}, path:{}  {}", getName(), path, e);
+            requestReload();
+        }
+    }
+
+    private void onResyncChildren(CuratorEvent event) throws Exception {
+        Loaded last = loaded;
+        KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+        if (code == KeeperException.Code.NONODE) {
+            if (last.path != null || last.childrenVersion != -1) {
+                log.info("{} removed during disconnection, path:{}", getName(), path);
+            }
+            requestReload();
+            return;
+        }
+        Stat stat = event.getStat();
+        if (code != KeeperException.Code.OK || stat == null || stat.getCversion() != last.childrenVersion) {
+            log.info("{} children changed during disconnection, path:{}", getName(), path);
+            requestReload();
+            return;
+        }
+        if (last.path == null) {
+            return;
+        }
+        Watcher watcher = last.path.equals(path) ? baseWatcher : leafWatcher;
+        curator().checkExists().usingWatcher(watcher)
+                .inBackground((client, e) -> onResyncLeaf(e, last))
+                .forPath(last.path);
+    }
+
+    private void onResyncLeaf(CuratorEvent event, Loaded last) {
+        String leaf = last.path;
+        if (!last.matches(event.getStat()) || last.snapshot != getVersion()) {
+            log.info("{} changed during disconnection, path:{}", getName(), leaf);
+            requestReload();
+        } else {
+            log.debug("{} unchanged after reconnect, path:{}", getName(), leaf);
+        }
+    }
+
+    /**
+     * 记录本次加载读取的节点版本,和加载后的快照对应,需要在 {@link #reload(byte[])} 之后调用
+     */
+    private void remember(String leaf, Stat dataStat, Stat baseStat) {
+        this.loaded = new Loaded(leaf, dataStat, baseStat == null ? -1 : baseStat.getCversion(), getVersion());
+        applied(dataStat);
+    }
+
+    /**
+     * 记录已经加载的节点的mzxid,比它旧的分片清单读完后不再加载
+     */
+    private void applied(Stat stat) {
+        if (stat != null) {
+            synchronized (chunkLock) {
+                appliedMzxid = Math.max(appliedMzxid, stat.getMzxid());
+            }
+        }
+    }
+
+    /**
+     * 节点和当前快照对应的内容相比没有变化时,只用1次exists重新挂上watcher,不再下载内容
+     *
+     * @return 没有变化返回true
+     */
+    private boolean unchanged(String p, Watcher watcher, Stat baseStat) {
+        Loaded last = loaded;
+        if (!p.equals(last.path) || last.snapshot != getVersion()) {
+            return false;
+        }
+        if (!last.matches(ZookeeperHelper.exists(curator(), p, watcher(watcher)))) {
+            return false;
+        }
+        this.loaded = last.withChildrenVersion(baseStat.getCversion());
+        log.info("{}, unchanged path:{}, mzxid:{}, skip download", getName(), p, last.mzxid);
+        return true;
+    }
+
+    /**
+     * 是否因为连接超时还没有完成首次加载
+     *
+     * @return 内容是空的或者旧的时返回true
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * 由共享的配置树缓存提供数据和变更通知,不再单独访问zookeeper
+     */
+    private void initTreeCache() {
+        stale = true;
+        if (treeListening.compareAndSet(false, true)) {
+            treeCache.register(path, this::requestReload);
+        }
+        if (!awaitTreeCache(treeCache)) {
+            // 缓存初始化完成时会刷新所有已注册的配置
+            log.warn("tree cache not initialized in {}ms, {} is stale until initialized", ConnectHolder.TIMEOUT,
+                    getName());
+            return;
+        }
+        reloadNow();
+    }
+
+    /**
+     * 等待配置树缓存完成首次同步,最多等待 zk.connect.timeout 毫秒;超时后直到同步完成之前不再等待
+     *
+     * @param treeCache 配置树缓存
+     * @return 已完成返回true
+     */
+    private static boolean awaitTreeCache(ConfigTreeCache treeCache) {
+        if (treeCache.isInitialized()) {
+            ConnectHolder.GAVE_UP.remove(treeCache);
+            return true;
+        }
+        if (ConnectHolder.GAVE_UP.contains(treeCache)) {
+            return false;
+        }
+        boolean initialized = treeCache.awaitInitialized(ConnectHolder.TIMEOUT, TimeUnit.MILLISECONDS);
+        if (!initialized) {
+            ConnectHolder.GAVE_UP.add(treeCache);
+        }
+        return initialized;
+    }
+
     public void loadAndWatchChanges() {
         initZookeeper();
     }
 
+    /**
+     * 通过curator的异步接口加载并添加watcher,便于批量加载时多个配置的请求同时在途
+     * <p>
+     * 调用前需要已经和zookeeper建立连接,加载失败时转为后台重试,返回的future总是正常结束
+     *
+     * @return 首次加载完成
+     */
+    public CompletableFuture<Void> loadAndWatchChangesAsync() {
+        if (treeCache != null) {
+            initZookeeper();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        // 占住单飞加载的位置,期间到达的事件等首次加载结束后再补1次
+        reloadWip.incrementAndGet();
+        done.whenComplete((v, e) -> {
+            if (reloadWip.getAndSet(0) > 1) {
+                requestReload();
+            }
+        });
+        try {
+            listenConnectionState();
+            watching(curator().getChildren(), baseWatcher)
+                    .inBackground((client, event) -> onChildren(event, done))
+                    .forPath(path);
+        } catch (Exception e) {
+            failAsync(done, e);
+        }
+        return done;
+    }
+
+    private void onChildren(CuratorEvent event, CompletableFuture<Void> done) {
+        try {
+            KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+            if (code == KeeperException.Code.NONODE) {
+                // 节点还不存在,等待创建事件
+                watching(curator().checkExists(), baseWatcher).inBackground().forPath(path);
+                notFound(done);
+                return;
+            }
+            if (code != KeeperException.Code.OK) {
+                throw KeeperException.create(code, path);
+            }
+            List<String> children = ChunkedPayload.withoutChunks(event.getChildren());
+            Stat baseStat = event.getStat();
+            if (children == null || children.isEmpty()) {
+                watching(curator().getData(), baseWatcher)
+                        .inBackground((client, e) -> onData(e, null, Collections.emptyList(), baseStat, done))
+                        .forPath(path);
+                return;
+            }
+            log.info("path:{}, children:{}", path, children);
+            //按照特定顺序逐个查找配置
+            List<String> candidates = paths.stream().filter(children::contains).collect(Collectors.toList());
+            fetchLeaf(candidates, baseStat, done);
+        } catch (Exception e) {
+            failAsync(done, e);
+        }
+    }
+
+    private void fetchLeaf(List<String> candidates, Stat baseStat, CompletableFuture<Void> done) throws Exception {
+        if (candidates.isEmpty()) {
+            watching(curator().checkExists(), baseWatcher).inBackground().forPath(path);
+            notFound(done);
+            remember(null, null, baseStat);
+            return;
+        }
+        String i = candidates.get(0);
+        // 设置config实际使用的profile
+        setProfile(i);
+        watching(curator().getData(), leafWatcher)
+                .inBackground((client, e) -> onData(e, i, candidates.subList(1, candidates.size()), baseStat, done))
+                .forPath(ZKPaths.makePath(path, i));
+    }
+
+    private void onData(CuratorEvent event, String profile, List<String> rest, Stat baseStat,
+                        CompletableFuture<Void> done) {
+        try {
+            byte[] content = PayloadCodec.decode(event.getData());
+            if (event.getResultCode() == KeeperException.Code.OK.intValue() && ChunkedPayload.isManifest(content)) {
+                onManifest(event, content, baseStat, done);
+            } else if (event.getResultCode() == KeeperException.Code.OK.intValue() && content != null
+                    && content.length > 0) {
+                log.info("{}, load from path:{}", getName(), event.getPath());
+                reload(content);
+                remember(event.getPath(), event.getStat(), baseStat);
+                done.complete(null);
+            } else if (profile == null) {
+                notFound(done);
+                remember(null, null, baseStat);
+            } else {
+                fetchLeaf(rest, baseStat, done);
+            }
+        } catch (Exception e) {
+            failAsync(done, e);
+        }
+    }
+
+    private void notFound(CompletableFuture<Void> done) {
+        log.warn("cannot find {} in zookeeper, path: {}", getName(), path);
+        reload(new byte[0]);
+        done.complete(null);
+    }
+
+    private void failAsync(CompletableFuture<Void> done, Throwable e) {
+        log.error("cannot load {} async, path:{}, retry in background  {}", getName(), path, e);
+        done.complete(null);
+        requestReload();
+    }
+
+    /**
+     * 更新profile查找顺序,比如后台识别出端口后增加ip:port,发生变化时重新加载;
+     * 还没有从zookeeper同步过的配置只更新顺序,等同步时按新顺序加载
+     *
+     * @param paths 按优先级排列的profile
+     */
+    public void updatePaths(List<String> paths) {
+        if (!paths.equals(this.paths)) {
+            log.info("{}, path:{}, order:{} -> {}", getName(), path, this.paths, paths);
+            this.paths = paths;
+            if (isSynced()) {
+                requestReload();
+            }
+        }
+    }
+
+    /**
+     * 是否已经从zookeeper同步过,连接超时还没加载的配置返回false
+     *
+     * @return 已同步返回true
+     */
+    protected boolean isSynced() {
+        return !stale;
+    }
+
+    /**
+     * 使用共享的配置树缓存,需要在 {@link #loadAndWatchChanges()} 之前设置
+     *
+     * @param treeCache 配置树缓存
+     */
+    public void setTreeCache(ConfigTreeCache treeCache) {
+        this.treeCache = treeCache;
+    }
+
+    /**
+     * zookeeper事件到达后等待一个静默期再加载,静默期内再有事件时重新计时,连续的事件合并成1次加载;
+     * 事件一直不停时最多推迟 {@link #MAX_QUIET_ROUNDS} 个静默期
+     */
+    protected void requestReload() {
+        synchronized (reloadLock) {
+            long now = System.currentTimeMillis();
+            if (pendingReload != null && now - pendingSince >= quietMillis * MAX_QUIET_ROUNDS) {
+                return;
+            }
+            if (pendingReload == null || !pendingReload.cancel(false)) {
+                pendingSince = now;
+            }
+            long seq = ++reloadSeq;
+            pendingReload = ReloadHolder.EXECUTOR.schedule(() -> firePendingReload(seq), quietMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void firePendingReload(long seq) {
+        synchronized (reloadLock) {
+            if (seq == reloadSeq) {
+                pendingReload = null;
+            }
+        }
+        reloadNow();
+    }
+
+    /**
+     * 单飞加载,已经有加载在进行时只记录1次,由进行中的加载结束后再补1次
+     */
+    protected void reloadNow() {
+        if (reloadWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            try {
+                loadFromZookeeper();
+            } catch (Exception e) {
+                log.error("cannot reload {} from zookeeper, path:{}  {}", getName(), path, e);
+            }
+            missed = reloadWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
     protected void loadFromZookeeper() {
+        if (treeCache != null) {
+            loadFromTreeCache();
+            return;
+        }
         log.info("{}, path:{}, order:{}", getName(), path, paths);
-        List<String> children = ZookeeperHelper.getChildren(getCurator(), path, baseWatcher);
+        Stat baseStat = new Stat();
+        List<String> children = ChunkedPayload.withoutChunks(
+                ZookeeperHelper.getChildren(curator(), path, watcher(baseWatcher), baseStat));
         boolean found = false;
         //按照特定顺序逐个查找配置
         if (children != null && !children.isEmpty()) {
@@ -113,10 +644,20 @@ public class RemoteConfig extends ChangeableConfig {
                 setProfile(i);
                 String p = ZKPaths.makePath(path, i);
                 try {
-                    byte[] content = ZookeeperHelper.getData(getCurator(), p, leafWatcher);
+                    if (unchanged(p, leafWatcher, baseStat)) {
+                        found = true;
+                        break;
+                    }
+                    Stat stat = new Stat();
+                    byte[] content = ZookeeperHelper.getData(curator(), p, watcher(leafWatcher), stat);
+                    if (ChunkedPayload.isManifest(content)) {
+                        loadChunks(p, content, stat, baseStat);
+                        return;
+                    }
                     if (content != null && content.length > 0) {
                         log.info("{}, load from path:{}", getName(), p);
                         reload(content);
+                        remember(p, stat, baseStat);
                         found = true;
                         break;
                     }
@@ -124,17 +665,142 @@ public class RemoteConfig extends ChangeableConfig {
                     log.error("cannot load {} from zookeeper, path{}  {}", getName(), path, e);
                 }
             }
-        } else if (ZookeeperHelper.exists(getCurator(), path) != null) {
-            byte[] content = ZookeeperHelper.getData(getCurator(), path, baseWatcher);
+        } else if (children != null) {
+            if (unchanged(path, baseWatcher, baseStat)) {
+                return;
+            }
+            Stat stat = new Stat();
+            byte[] content = ZookeeperHelper.getData(curator(), path, watcher(baseWatcher), stat);
+            if (ChunkedPayload.isManifest(content)) {
+                loadChunks(path, content, stat, baseStat);
+                return;
+            }
             if (content != null && content.length > 0) {
                 reload(content);
+                remember(path, stat, baseStat);
                 found = true;
             }
         }
         if (!found) {
-            ZookeeperHelper.exists(getCurator(), path, baseWatcher);
+            ZookeeperHelper.exists(curator(), path, watcher(baseWatcher));
             log.warn("cannot find {} in zookeeper, path: {}", getName(), path);
             reload(new byte[0]);
+            remember(null, null, children == null ? null : baseStat);
+        }
+    }
+
+    /**
+     * 节点内容是分片清单时,在后台并行读取清单指向的全部分片,读齐后再加载,不占用加载线程
+     * <p>
+     * 同一份清单(mzxid相同)同时只读取1次;只加载比已经加载的节点更新的清单,
+     * 先开始的旧清单晚读完时不会覆盖新的内容;分片不完整时保留当前内容并稍后重试
+     *
+     * @param p        清单所在节点
+     * @param manifest 清单
+     * @param stat     清单节点的版本
+     * @param baseStat 配置节点的版本,配置树缓存模式下为null,不记录
+     * @return 加载完成、跳过或者失败后结束,不会异常结束
+     */
+    private CompletableFuture<Void> loadChunks(String p, byte[] manifest, Stat stat, Stat baseStat) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ChunkedPayload chunked = ChunkedPayload.parse(manifest);
+        if (chunked == null) {
+            log.error("{}, unsupported chunk manifest, path:{}", getName(), p);
+            done.complete(null);
+            return done;
+        }
+        long mzxid = stat == null ? Long.MAX_VALUE : stat.getMzxid();
+        synchronized (chunkLock) {
+            if (mzxid <= appliedMzxid || mzxid == fetchingMzxid) {
+                log.info("{}, skip chunks of generation {}, already loaded or loading, path:{}", getName(),
+                        chunked.getGeneration(), p);
+                done.complete(null);
+                return done;
+            }
+            fetchingMzxid = mzxid;
+        }
+        chunked.fetch(curator(), p).whenComplete((content, e) -> {
+            try {
+                synchronized (chunkLock) {
+                    if (fetchingMzxid == mzxid) {
+                        fetchingMzxid = -1;
+                    }
+                    if (e == null && mzxid <= appliedMzxid) {
+                        log.info("{}, skip chunks of generation {}, newer content loaded while fetching", getName(),
+                                chunked.getGeneration());
+                        return;
+                    }
+                }
+                if (e != null) {
+                    log.warn("{}, chunks not complete, path:{}, generation:{}, retry in {}ms  {}", getName(), p,
+                            chunked.getGeneration(), CHUNK_RETRY, e.toString());
+                    ReloadHolder.EXECUTOR.schedule(this::requestReload, CHUNK_RETRY, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                log.info("{}, load {} bytes from chunks, path:{}, generation:{}", getName(), content.length, p,
+                        chunked.getGeneration());
+                reload(content);
+                if (baseStat != null) {
+                    remember(p, stat, baseStat);
+                } else {
+                    applied(stat);
+                }
+            } finally {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    private void onManifest(CuratorEvent event, byte[] manifest, Stat baseStat, CompletableFuture<Void> done) {
+        loadChunks(event.getPath(), manifest, event.getStat(), baseStat).whenComplete((v, e) -> done.complete(null));
+    }
+
+    private void loadFromTreeCache() {
+        if (treeCache.isInitialized()) {
+            stale = false;
+        }
+        Map<String, ChildData> children = treeCache.getChildren(path);
+        boolean found = false;
+        //按照特定顺序逐个查找配置
+        if (children != null && children.keySet().stream().anyMatch(i -> !ChunkedPayload.isChunk(i))) {
+            for (String i : paths) {
+                ChildData child = children.get(i);
+                if (child == null) {
+                    continue;
+                }
+                // 设置config实际使用的profile
+                setProfile(i);
+                byte[] content = PayloadCodec.decode(child.getData());
+                if (ChunkedPayload.isManifest(content)) {
+                    // 分片不在缓存的深度内,直接读取
+                    loadChunks(child.getPath(), content, child.getStat(), null);
+                    return;
+                }
+                if (content != null && content.length > 0) {
+                    log.info("{}, load from cache path:{}", getName(), child.getPath());
+                    reload(content);
+                    applied(child.getStat());
+                    found = true;
+                    break;
+                }
+            }
+        } else {
+            ChildData node = treeCache.getData(path);
+            byte[] content = node == null ? null : PayloadCodec.decode(node.getData());
+            if (ChunkedPayload.isManifest(content)) {
+                loadChunks(path, content, node.getStat(), null);
+                return;
+            }
+            if (content != null && content.length > 0) {
+                reload(content);
+                applied(node.getStat());
+                found = true;
+            }
+        }
+        if (!found) {
+            log.warn("cannot find {} in tree cache, path: {}", getName(), path);
+            reload(new byte[0]);
         }
     }
 
@@ -150,6 +816,79 @@ public class RemoteConfig extends ChangeableConfig {
         return path;
     }
 
+    /**
+     * 加载时读取的节点版本,和加载后的快照版本绑定;快照被其他来源(比如本地文件)更新后不再据此跳过
+     */
+    private static class Loaded {
+        private static final Loaded NONE = new Loaded(null, null, -1, -1);
+        private final String path;
+        private final long mzxid;
+        private final int version;
+        private final int dataLength;
+        private final int childrenVersion;
+        private final long snapshot;
+
+        private Loaded(String path, Stat stat, int childrenVersion, long snapshot) {
+            this(path, stat == null ? -1 : stat.getMzxid(), stat == null ? -1 : stat.getVersion(),
+                    stat == null ? -1 : stat.getDataLength(), childrenVersion, snapshot);
+        }
+
+        private Loaded(String path, long mzxid, int version, int dataLength, int childrenVersion, long snapshot) {
+            this.path = path;
+            this.mzxid = mzxid;
+            this.version = version;
+            this.dataLength = dataLength;
+            this.childrenVersion = childrenVersion;
+            this.snapshot = snapshot;
+        }
+
+        boolean matches(Stat stat) {
+            return stat != null && path != null && stat.getMzxid() == mzxid && stat.getVersion() == version
+                    && stat.getDataLength() == dataLength;
+        }
+
+        Loaded withChildrenVersion(int childrenVersion) {
+            return new Loaded(path, mzxid, version, dataLength, childrenVersion, snapshot);
+        }
+    }
+
+    private static class ConnectHolder {
+        private static final long TIMEOUT = ConfigHelper.getApplicationConfig().getLong(ZOOKEEPER_CONNECT_TIMEOUT, 15000L);
+        /**
+         * 等待超时的客户端或配置树缓存
+         */
+        private static final Set<Object> GAVE_UP = Sets.newConcurrentHashSet();
+        /**
+         * 已经注册了连接状态监听的客户端
+         */
+        private static final Set<CuratorFramework> LISTENED = Sets.newConcurrentHashSet();
+
+        /**
+         * 记录等待超时的客户端,连上或重连后清除,之后创建的配置重新等待连接
+         */
+        static void giveUp(CuratorFramework client) {
+            GAVE_UP.add(client);
+            if (LISTENED.add(client)) {
+                client.getConnectionStateListenable().addListener((c, newState) -> {
+                    if (newState == ConnectionState.CONNECTED || newState == ConnectionState.RECONNECTED) {
+                        GAVE_UP.remove(c);
+                    }
+                });
+            }
+            if (client.getZookeeperClient().isConnected()) {
+                // 超时和注册监听之间已经连上
+                GAVE_UP.remove(client);
+            }
+        }
+    }
+
+    private static class ReloadHolder {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(
+                ConfigHelper.getApplicationConfig().getInt(ZOOKEEPER_RELOAD_THREADS,
+                        Math.max(2, Runtime.getRuntime().availableProcessors())),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-reload-%d").build());
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this).add("name", getName()).add("path", path).toString();
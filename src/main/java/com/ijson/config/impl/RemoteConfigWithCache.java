@@ -3,18 +3,24 @@ package com.ijson.config.impl;
 import com.google.common.base.MoreObjects;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.google.common.util.concurrent.Uninterruptibles;
+import com.ijson.config.base.Config;
+import com.ijson.config.helper.ConfigHelper;
 import com.ijson.config.helper.FileUpdateWatcher;
+import com.ijson.config.helper.SnapshotBundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static com.ijson.config.base.ConfigConstants.CACHE_FILE_SIZE;
+import static com.ijson.config.base.ConfigConstants.ConfKeys.*;
 
 /**
  * @author *
@@ -24,13 +30,16 @@ public class RemoteConfigWithCache extends RemoteConfig {
 
     public static final Logger log = LoggerFactory.getLogger(RemoteConfigWithCache.class);
 
-    private static final ThreadFactory FACTORY =
-            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-load-%d").build();
     private final File cacheFile;
     /**
      * 延迟加载远程配置初始值,避免加载配置影响启动
      */
     private boolean loadedFromZookeeper = false;
+    /**
+     * 从本地cache启动,还在等待延迟同步
+     */
+    private volatile boolean warmupPending = false;
+    private volatile SnapshotBundle bundle;
 
     public RemoteConfigWithCache(String name, String basePath, List<String> paths, File cacheFile) {
         super(name, basePath, paths);
@@ -41,17 +50,43 @@ public class RemoteConfigWithCache extends RemoteConfig {
         return cacheFile;
     }
 
+    /**
+     * 冷启动时优先从打包文件读取本地cache,需要在 {@link #loadAndWatchChanges()} 之前设置
+     *
+     * @param bundle 打包文件
+     */
+    public void setBundle(SnapshotBundle bundle) {
+        this.bundle = bundle;
+    }
+
+    private byte[] readCache() throws IOException {
+        byte[] content = bundle == null ? null : bundle.read(getName(), cacheFile);
+        return content != null ? content : Files.toByteArray(cacheFile);
+    }
+
+    private boolean hasCache() {
+        return hasCache(cacheFile);
+    }
+
+    /**
+     * 本地cache文件是否可用
+     *
+     * @param cacheFile 本地cache文件
+     * @return 存在且不为空时返回true
+     */
+    public static boolean hasCache(File cacheFile) {
+        return cacheFile.exists() && cacheFile.length() > CACHE_FILE_SIZE;
+    }
+
     @Override
     public void loadAndWatchChanges() {
         //有本地配置就先从本地加载
-        if (cacheFile.exists() && cacheFile.length() > CACHE_FILE_SIZE) {
+        if (hasCache()) {
             try {
-                copyOf(Files.toByteArray(cacheFile));
-                FACTORY.newThread(() -> {
-                    //延迟加载zookeeper上的配置,避免服务启动过慢
-                    Uninterruptibles.sleepUninterruptibly(15, TimeUnit.SECONDS);
-                    initZookeeper();
-                }).start();
+                copyOf(readCache());
+                //延迟加载zookeeper上的配置,避免服务启动过慢
+                warmupPending = true;
+                Warmup.schedule(this);
             } catch (IOException e) {
                 log.error("cannot read {}", cacheFile);
                 initZookeeper();
@@ -60,7 +95,25 @@ public class RemoteConfigWithCache extends RemoteConfig {
             //本地没有则直接从zookeeper加载
             initZookeeper();
         }
-        //注册本地配置变更通知回调
+        watchCacheFile();
+    }
+
+    @Override
+    public CompletableFuture<Void> loadAndWatchChangesAsync() {
+        //有本地配置时本地加载已经足够快
+        if (hasCache()) {
+            loadAndWatchChanges();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> done = super.loadAndWatchChangesAsync();
+        watchCacheFile();
+        return done;
+    }
+
+    /**
+     * 注册本地配置变更通知回调
+     */
+    private void watchCacheFile() {
         FileUpdateWatcher.getInstance().watch(cacheFile.toPath(), (path, content) -> {
             log.info("local change: {}", path);
             refresh(content);
@@ -81,6 +134,11 @@ public class RemoteConfigWithCache extends RemoteConfig {
         }
     }
 
+    @Override
+    protected boolean isSynced() {
+        return !warmupPending && super.isSynced();
+    }
+
     @Override
     protected void reload(byte[] content) {
         //避免首次启动,远程配置不存在反而覆盖了本地配置
@@ -93,6 +151,45 @@ public class RemoteConfigWithCache extends RemoteConfig {
         refresh(content);
     }
 
+    /**
+     * 所有从本地cache启动的配置共用的延迟同步调度,线程数即同时同步zookeeper的上限,
+     * 延迟上叠加随机抖动,避免所有配置在同一时刻访问zookeeper
+     * <pre>
+     * zk.warmup.delay     延迟毫秒数,默认15000
+     * zk.warmup.jitter    随机抖动毫秒数,默认5000
+     * zk.warmup.threads   同时同步的配置数,默认4
+     * zk.warmup.immediate 为true时不延迟,立即在后台同步
+     * </pre>
+     */
+    private static class Warmup {
+        private static final long DELAY;
+        private static final long JITTER;
+        private static final ScheduledExecutorService EXECUTOR;
+
+        static {
+            Config app = ConfigHelper.getApplicationConfig();
+            boolean immediate = app.getBool(ZOOKEEPER_WARMUP_IMMEDIATE, false);
+            DELAY = immediate ? 0 : Math.max(0, app.getLong(ZOOKEEPER_WARMUP_DELAY, 15000L));
+            JITTER = immediate ? 0 : Math.max(0, app.getLong(ZOOKEEPER_WARMUP_JITTER, 5000L));
+            int threads = Math.max(1, app.getInt(ZOOKEEPER_WARMUP_THREADS, 4));
+            EXECUTOR = Executors.newScheduledThreadPool(threads,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("config-warmup-%d").build());
+            log.info("zookeeper warmup delay:{}ms, jitter:{}ms, threads:{}", DELAY, JITTER, threads);
+        }
+
+        static void schedule(RemoteConfigWithCache config) {
+            long delay = DELAY + (JITTER > 0 ? ThreadLocalRandom.current().nextLong(JITTER + 1) : 0);
+            EXECUTOR.schedule(() -> {
+                try {
+                    config.warmupPending = false;
+                    config.initZookeeper();
+                } catch (Exception e) {
+                    log.error("cannot sync {} from zookeeper  {}", config.getName(), e);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -0,0 +1,96 @@
+package com.ijson.config.base;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 按配置大小对比字节解析与原先先解码再逐行切分的解析方式
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class ConfigParserBenchmark {
+
+    @Param({"64", "1024", "5120", "20480"})
+    public int sizeKb;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        StringBuilder sbd = new StringBuilder();
+        int i = 0;
+        while (sbd.length() < sizeKb * 1024) {
+            if (i % 50 == 0) {
+                sbd.append("# 路由分组 ").append(i).append('\n');
+            }
+            sbd.append("route.user.").append(i).append(" = ").append("10.0.").append(i % 256).append('.').append(i % 100)
+                    .append(":8080");
+            if (i % 20 == 0) {
+                sbd.append("\\t\\u4e2d");
+            }
+            sbd.append('\n');
+            i++;
+        }
+        content = sbd.toString().getBytes(UTF8);
+        if (!legacyParse(content).equals(ConfigParser.parse(content))) {
+            throw new IllegalStateException("parsers disagree");
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> legacy() {
+        return legacyParse(content);
+    }
+
+    @Benchmark
+    public Map<String, String> bytes() {
+        return ConfigParser.parse(content);
+    }
+
+    /**
+     * 原先 Config.parse 的实现,作为对照
+     */
+    static Map<String, String> legacyParse(byte[] bytes) {
+        Map<String, String> m = Maps.newLinkedHashMap();
+        String txt = new String(bytes, UTF8);
+        for (String i : Splitter.on('\n').trimResults().omitEmptyStrings().split(txt)) {
+            if (i.charAt(0) == '#' || i.startsWith("//")) {
+                continue;
+            }
+            int pos = i.indexOf('=');
+            if (pos != -1) {
+                String k = i.substring(0, pos).trim();
+                int next = pos + 1;
+                if (next < i.length()) {
+                    try {
+                        m.put(k, ConfigParser.unEscapeJava(i.substring(next).trim()));
+                    } catch (Exception ignored) {
+                    }
+                } else {
+                    m.put(k, "");
+                }
+            }
+        }
+        return ImmutableMap.copyOf(m);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(ConfigParserBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.ijson.config.base;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 验证字节解析与原先先解码再逐行切分的解析结果一致,覆盖换行、空白、注释、转义等边界
+ */
+public class ConfigParserTest {
+
+    public static final Logger log = LoggerFactory.getLogger(ConfigParserTest.class);
+
+    public static void main(String[] args) {
+        same("empty", "");
+        same("blank lines", "\n\n  \n\t\n");
+        same("plain", "a=1\nb=2\nc=3");
+        same("crlf", "a=1\r\nb = 2 \r\n\r\nc=\r\n");
+        same("cr only inside line", "a=x\ry\nb=2\r");
+        same("no trailing newline", "a=1\nb=2");
+        same("empty value", "a=\nb= \nc=\t\n=d\n");
+        same("repeated key", "a=1\na=2\n");
+        same("value with equals", "url=http://host/path?a=1&b=2\n");
+        same("line without equals", "abc\nkey value\na=1\n  plain text  \n");
+        same("hash comment", "# comment=1\n  #a=2\nb=#3\n");
+        same("slash comment", "// comment=1\n\t//a=2\nb=//3\n/c=4\n");
+        same("unicode whitespace", "\u3000a=1\u3000\n\u00a0b=2\u00a0\n\u2003c = 3\u2002\n\u1680d=4\u205f\n\u0085e=5\u2028\n\u202ff=6\u2029\n");
+        same("unicode whitespace only", "\u3000\u2000\u200a\n\u00a0\n");
+        same("unicode around comment", "\u3000# a=1\n\u2003// b=2\n");
+        same("unicode inside key and value", "a\u3000b = c\u3000d\n");
+        same("multi byte text", "名称=中文值\n键 = 値\u3000\nemoji=\ud83d\ude00\n");
+        same("escapes", "a=\\t\\n\\r\\b\\f\\\\\\\"\\'\nb=\\u4e2d\\u6587\nc=x\\U0041y\n");
+        same("escape in key only", "a\\tb=1\n");
+        same("unknown escape", "a=\\x\\q\nb=\\\n");
+        same("bad unicode escape", "a=\\u12\nb=1\nc=\\uzzzz\nd=\\u4e2\n");
+        same("trailing backslash", "a=abc\\\nb=2\n");
+        same("escape with crlf", "a=\\u0041\r\nb=\\t\r\n");
+
+        Map<String, String> m = ConfigParser.parse("a=\\u4e2d\r\nb\u3000=\u3000x\n#c=1\nd\ne=\\u12\n".getBytes(UTF8));
+        check("\u4e2d".equals(m.get("a")), "unicode escape is decoded");
+        check("\u3000x".equals(m.get("b\u3000")), "key and value keep inner unicode whitespace like String.trim");
+        check(!m.containsKey("#c") && !m.containsKey("d"), "comments and lines without '=' are skipped");
+        check(!m.containsKey("e"), "bad escape drops the key");
+        log.info("all passed");
+    }
+
+    private static void same(String name, String txt) {
+        byte[] bytes = txt.getBytes(UTF8);
+        Map<String, String> expected = ConfigParserBenchmark.legacyParse(bytes);
+        Map<String, String> actual = ConfigParser.parse(bytes);
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(name + ": expected " + expected + " but " + actual);
+        }
+        check(true, name);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(message);
+        }
+        log.info("ok: {}", message);
+    }
+}
@@ -0,0 +1,81 @@
+package com.ijson.config.base;
+
+import com.google.common.collect.Maps;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比类型化缓存读取与每次重新解析字符串的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesBenchmark {
+
+    private Properties props;
+
+    @Setup
+    public void setup() {
+        Map<String, String> m = Maps.newHashMap();
+        m.put("rate.limit", "1200");
+        m.put("timeout.millis", "1500000000000");
+        m.put("sample.ratio", "0.125");
+        m.put("feature.enable", "true");
+        props = new Properties();
+        props.copyOf(m);
+    }
+
+    @Benchmark
+    public int reparseInt() {
+        return Integer.parseInt(props.get("rate.limit"));
+    }
+
+    @Benchmark
+    public int cachedInt() {
+        return props.getInt("rate.limit");
+    }
+
+    @Benchmark
+    public long reparseLong() {
+        return Long.parseLong(props.get("timeout.millis"));
+    }
+
+    @Benchmark
+    public long cachedLong() {
+        return props.getLong("timeout.millis");
+    }
+
+    @Benchmark
+    public double reparseDouble() {
+        return Double.parseDouble(props.get("sample.ratio"));
+    }
+
+    @Benchmark
+    public double cachedDouble() {
+        return props.getDouble("sample.ratio");
+    }
+
+    @Benchmark
+    public boolean reparseBool() {
+        return Boolean.parseBoolean(props.get("feature.enable"));
+    }
+
+    @Benchmark
+    public boolean cachedBool() {
+        return props.getBool("feature.enable");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include(PropertiesBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+}
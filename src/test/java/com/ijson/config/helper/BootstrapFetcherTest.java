@@ -0,0 +1,76 @@
+package com.ijson.config.helper;
+
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 用本地HttpServer模拟配置中心,验证条件请求、304复用本地副本以及超时和不可达时回退
+ */
+public class BootstrapFetcherTest {
+
+    public static final Logger log = LoggerFactory.getLogger(BootstrapFetcherTest.class);
+
+    public static void main(String[] args) throws Exception {
+        byte[] body = "zk.servers=127.0.0.1:2181\nzk.basePath=/in/config\n".getBytes(UTF8);
+        AtomicInteger full = new AtomicInteger();
+        AtomicInteger notModified = new AtomicInteger();
+        AtomicBoolean slow = new AtomicBoolean(false);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/config", exchange -> {
+            if (slow.get()) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ignored) {
+                }
+                exchange.sendResponseHeaders(500, -1);
+            } else if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                full.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        Path dir = Files.createTempDirectory("bootstrap");
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/config?profile=develop";
+        try {
+            BootstrapFetcher fetcher = new BootstrapFetcher(dir.resolve(".bootstrap.cache"), 500, 500);
+            check(Arrays.equals(body, fetcher.fetch(url)), "first fetch returns body");
+            check(Arrays.equals(body, fetcher.fetch(url)), "revalidated fetch returns cached body");
+            check(full.get() == 1 && notModified.get() == 1, "second fetch is conditional");
+
+            slow.set(true);
+            long start = System.currentTimeMillis();
+            check(Arrays.equals(body, fetcher.fetch(url)), "read timeout falls back to local copy");
+            check(System.currentTimeMillis() - start < 1500, "fallback does not wait for the slow server");
+
+            server.stop(0);
+            check(Arrays.equals(body, fetcher.fetch(url)), "unreachable server falls back to local copy");
+            check(fetcher.fetch(url + "&name=other") == null, "local copy is bound to the url");
+        } finally {
+            server.stop(0);
+        }
+        log.info("all passed, full:{}, notModified:{}", full.get(), notModified.get());
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(message);
+        }
+        log.info("ok: {}", message);
+    }
+}
@@ -0,0 +1,68 @@
+package com.ijson.config.helper;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 验证分片清单的编码和解析,切分后的分片按清单拼接可以还原,缺失或损坏时拒绝
+ */
+public class ChunkedPayloadTest {
+
+    public static final Logger log = LoggerFactory.getLogger(ChunkedPayloadTest.class);
+
+    public static void main(String[] args) throws IOException {
+        StringBuilder sbd = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sbd.append("key.").append(i).append('=').append("value-").append(i).append('\n');
+        }
+        byte[] data = sbd.toString().getBytes(UTF8);
+        int chunkSize = 4096;
+        ChunkedPayload manifest = ChunkedPayload.of(data, 42L, chunkSize);
+        check(manifest.getCount() == (data.length + chunkSize - 1) / chunkSize, "chunk count covers the payload");
+
+        byte[] encoded = manifest.toBytes();
+        check(ChunkedPayload.isManifest(encoded), "manifest is recognized");
+        check(!ChunkedPayload.isManifest(data), "plain payload is not a manifest");
+        ChunkedPayload parsed = ChunkedPayload.parse(encoded);
+        check(parsed != null && parsed.getGeneration() == 42L && parsed.getCount() == manifest.getCount(),
+                "manifest round trips");
+        check(Arrays.equals(encoded, parsed.toBytes()), "manifest bytes are stable");
+
+        check(manifest.chunkName(3).equals("chunk-42-3"), "chunk name is chunk-generation-index");
+        check(ChunkedPayload.generationOf(manifest.chunkName(3)) == 42L, "generation parsed from chunk name");
+        check(ChunkedPayload.generationOf("chunk-x") == Long.MIN_VALUE, "unknown chunk name is oldest");
+        List<String> children = ImmutableList.of("ip", manifest.chunkName(0), "default");
+        check(ChunkedPayload.withoutChunks(children).equals(ImmutableList.of("ip", "default")),
+                "chunks are not profiles");
+
+        byte[] buf = new byte[data.length];
+        for (int i = parsed.getCount() - 1; i >= 0; i--) {
+            check(parsed.put(buf, i, manifest.chunk(data, i)), "chunk " + i + " fits");
+        }
+        check(Arrays.equals(data, parsed.assemble(buf)), "chunks reassemble to the payload");
+
+        check(!parsed.put(buf, 0, new byte[chunkSize - 1]), "short chunk is rejected");
+        buf[10] ^= 1;
+        try {
+            parsed.assemble(buf);
+            check(false, "corrupted chunk is rejected");
+        } catch (IOException e) {
+            log.info("ok: corrupted chunk is rejected, {}", e.toString());
+        }
+        log.info("all passed, {} bytes in {} chunks", data.length, manifest.getCount());
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(message);
+        }
+        log.info("ok: {}", message);
+    }
+}
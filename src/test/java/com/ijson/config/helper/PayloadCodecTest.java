@@ -0,0 +1,53 @@
+package com.ijson.config.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.ijson.config.base.ConfigConstants.ConfKeys.ZOOKEEPER_COMPRESS_THRESHOLD;
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 验证超过阈值的内容压缩后可以还原,没有压缩的旧内容和解压失败的内容原样读取
+ */
+public class PayloadCodecTest {
+
+    public static final Logger log = LoggerFactory.getLogger(PayloadCodecTest.class);
+
+    public static void main(String[] args) {
+        // 默认不压缩,这里开启
+        if (System.getProperty(ZOOKEEPER_COMPRESS_THRESHOLD) == null) {
+            System.setProperty(ZOOKEEPER_COMPRESS_THRESHOLD, "32768");
+        }
+        byte[] small = "a=1\nb=2\n".getBytes(UTF8);
+        check(PayloadCodec.encode(small) == small, "small payload is not compressed");
+        check(PayloadCodec.decode(small) == small, "plain payload is returned as is");
+
+        StringBuilder sbd = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sbd.append("key.").append(i).append('=').append("value-").append(i % 97).append('\n');
+        }
+        byte[] large = sbd.toString().getBytes(UTF8);
+        byte[] encoded = PayloadCodec.encode(large);
+        check(PayloadCodec.isCompressed(encoded), "large payload is compressed");
+        check(encoded.length < large.length / 3, "compressed payload is smaller");
+        check(Arrays.equals(large, PayloadCodec.decode(encoded)), "compressed payload round trips");
+        check(PayloadCodec.encode(encoded) == encoded, "compressed payload is not compressed twice");
+
+        byte[] broken = Arrays.copyOf(encoded, encoded.length - 10);
+        check(PayloadCodec.decode(broken) == broken, "truncated payload is returned as is");
+        byte[] fake = new byte[32];
+        fake[0] = (byte) 0x1f;
+        fake[1] = (byte) 0x8b;
+        check(PayloadCodec.decode(fake) == fake, "payload with gzip magic but not gzip is returned as is");
+        log.info("all passed, {} -> {} bytes", large.length, encoded.length);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(message);
+        }
+        log.info("ok: {}", message);
+    }
+}
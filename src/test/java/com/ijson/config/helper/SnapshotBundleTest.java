@@ -0,0 +1,77 @@
+package com.ijson.config.helper;
+
+import com.ijson.config.base.ChangeableConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.ijson.config.base.ConfigConstants.UTF8;
+
+/**
+ * 验证打包文件写入后可以按配置读回,停机期间修改过的配置文件在登记后按摘要核对并更新
+ */
+public class SnapshotBundleTest {
+
+    public static final Logger log = LoggerFactory.getLogger(SnapshotBundleTest.class);
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("bundle");
+        byte[] a = "a=1\nb=2\n".getBytes(UTF8);
+        byte[] b = "x=foo\ny=bar\n".getBytes(UTF8);
+        File fileA = write(dir, "a", a);
+        File fileB = write(dir, "b", b);
+
+        SnapshotBundle bundle = new SnapshotBundle(dir);
+        check(bundle.read("a", fileA) == null, "empty bundle has nothing");
+        bundle.track(config("a", a), fileA);
+        bundle.track(config("b", b), fileB);
+        bundle.write();
+        check(Files.exists(dir.resolve(SnapshotBundle.FILE_NAME)), "bundle file written");
+
+        SnapshotBundle reopened = new SnapshotBundle(dir);
+        check(Arrays.equals(a, reopened.read("a", fileA)), "config a round trips");
+        check(reopened.read("a", fileA) == null, "each config is read once");
+        check(reopened.read("c", new File(dir.toFile(), "c")) == null, "unknown config is not found");
+
+        // 停机期间修改,长度不变
+        byte[] edited = "x=baz\ny=qux\n".getBytes(UTF8);
+        write(dir, "b", edited);
+        byte[] served = reopened.read("b", fileB);
+        check(Arrays.equals(b, served), "bundle content is served at startup");
+        ChangeableConfig cb = config("b", served);
+        reopened.track(cb, fileB);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!Arrays.equals(edited, cb.getContent()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        check(Arrays.equals(edited, cb.getContent()), "edited file is picked up by digest");
+
+        reopened.release();
+        SnapshotBundle released = new SnapshotBundle(dir);
+        released.release();
+        check(released.read("a", fileA) == null, "released bundle falls back to files");
+        log.info("all passed, dir:{}", dir);
+    }
+
+    private static ChangeableConfig config(String name, byte[] content) {
+        ChangeableConfig c = new ChangeableConfig(name);
+        c.copyOf(content);
+        return c;
+    }
+
+    private static File write(Path dir, String name, byte[] content) throws IOException {
+        return Files.write(dir.resolve(name), content).toFile();
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) {
+            throw new IllegalStateException(message);
+        }
+        log.info("ok: {}", message);
+    }
+}